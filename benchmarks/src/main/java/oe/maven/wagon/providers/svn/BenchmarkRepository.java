@@ -0,0 +1,263 @@
+/*-
+ * Copyright (c) 2009-2011, Oleg Estekhin
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the distribution.
+ *  * Neither the names of the copyright holders nor the names of their
+ *    contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ * DAMAGE.
+ */
+
+
+package oe.maven.wagon.providers.svn;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Random;
+
+import org.apache.maven.wagon.repository.Repository;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.tmatesoft.svn.core.SVNURL;
+import org.tmatesoft.svn.core.io.SVNRepositoryFactory;
+
+/**
+ * The temporary repository shared by all benchmark threads.
+ * <p/>
+ * The repository is created as a local FSFS repository and is accessed either directly via the {@code file://}
+ * protocol or via the {@code svn://} protocol through the locally spawned {@code svnserve}. The repository is populated
+ * with the fixture files and directories that the read benchmarks operate on, the same local files are used as the
+ * sources by the write benchmarks.
+ */
+@State( Scope.Benchmark )
+public class BenchmarkRepository {
+
+    /** The size of the small file. */
+    static final int SMALL_FILE_SIZE = 1024;
+
+    /** The size of the large file. */
+    static final int LARGE_FILE_SIZE = 8 * 1024 * 1024;
+
+    /** The number of the files in the wide directory. */
+    static final int WIDE_DIRECTORY_SIZE = 256;
+
+    /** The depth of the deep directory. */
+    static final int DEEP_DIRECTORY_DEPTH = 32;
+
+    /** The repository path of the small fixture file. */
+    static final String SMALL_FILE = "fixtures/small.bin";
+
+    /** The repository path of the large fixture file. */
+    static final String LARGE_FILE = "fixtures/large.bin";
+
+    /** The repository path of the wide fixture directory. */
+    static final String WIDE_DIRECTORY = "fixtures/wide";
+
+    /** The repository path of the deep fixture directory. */
+    static final String DEEP_DIRECTORY = "fixtures/deep";
+
+
+    /** The transport used to access the repository, either {@code file} or {@code svn}. */
+    @Param( { "file", "svn" } )
+    public String transport;
+
+    private File baseDirectory;
+
+    private File localDirectory;
+
+    private Repository repository;
+
+    private Process svnserveProcess;
+
+
+    @Setup( Level.Trial )
+    public void setUp() throws Exception {
+        baseDirectory = File.createTempFile( "maven-svn-wagon-benchmark", "" );
+        if ( !baseDirectory.delete() || !baseDirectory.mkdirs() ) {
+            throw new IOException( "failed to create " + baseDirectory );
+        }
+        File repositoryDirectory = new File( baseDirectory, "repositories/benchmark" );
+        SVNURL fileUrl = SVNRepositoryFactory.createLocalRepository( repositoryDirectory, true, false );
+        SVNURL svnUrl = null;
+        if ( "svn".equals( transport ) ) {
+            writeFile( new File( repositoryDirectory, "conf/svnserve.conf" ), "[general]\nanon-access = write\n".getBytes( "UTF-8" ) );
+            int port = findFreePort();
+            ProcessBuilder builder = new ProcessBuilder( "svnserve", "-d", "--foreground",
+                    "--listen-host", "localhost", "--listen-port", String.valueOf( port ),
+                    "-r", new File( baseDirectory, "repositories" ).getAbsolutePath() );
+            builder.redirectErrorStream( true );
+            svnserveProcess = builder.start();
+            waitForPort( port );
+            svnUrl = SVNURL.create( "svn", null, "localhost", port, "benchmark", false );
+        } else if ( !"file".equals( transport ) ) {
+            throw new IllegalArgumentException( "unsupported transport " + transport );
+        }
+        CountingRepositoryFactory.install( fileUrl, svnUrl );
+        repository = new Repository( "benchmark", "svn:" + ( svnUrl == null ? fileUrl : svnUrl ).toString() );
+
+        localDirectory = new File( baseDirectory, "local" );
+        Random random = new Random( 0 );
+        writeFile( getSmallFile(), randomBytes( random, SMALL_FILE_SIZE ) );
+        writeFile( getLargeFile(), randomBytes( random, LARGE_FILE_SIZE ) );
+        for ( int i = 0; i < WIDE_DIRECTORY_SIZE; i++ ) {
+            writeFile( new File( getWideDirectory(), "file-" + i + ".bin" ), randomBytes( random, SMALL_FILE_SIZE ) );
+        }
+        File directory = getDeepDirectory();
+        for ( int i = 0; i < DEEP_DIRECTORY_DEPTH; i++ ) {
+            directory = new File( directory, "level-" + i );
+            writeFile( new File( directory, "file.bin" ), randomBytes( random, SMALL_FILE_SIZE ) );
+        }
+
+        SVNWagon wagon = createWagon();
+        wagon.connect( repository );
+        try {
+            wagon.put( getSmallFile(), SMALL_FILE );
+            wagon.put( getLargeFile(), LARGE_FILE );
+            wagon.putDirectory( getWideDirectory(), WIDE_DIRECTORY );
+            wagon.putDirectory( getDeepDirectory(), DEEP_DIRECTORY );
+        } finally {
+            wagon.disconnect();
+        }
+    }
+
+    @TearDown( Level.Trial )
+    public void tearDown() throws Exception {
+        if ( svnserveProcess != null ) {
+            svnserveProcess.destroy();
+            svnserveProcess.waitFor();
+        }
+        delete( baseDirectory );
+    }
+
+
+    /**
+     * Returns the wagon repository that points to the benchmark repository.
+     *
+     * @return the wagon repository
+     */
+    Repository getRepository() {
+        return repository;
+    }
+
+    /**
+     * Creates a new wagon that keeps its repository root cache in the benchmark directory.
+     *
+     * @return the new wagon
+     */
+    SVNWagon createWagon() {
+        SVNWagon wagon = new SVNWagon();
+        wagon.setRootCacheFile( new File( baseDirectory, "repository-roots.properties" ) );
+        return wagon;
+    }
+
+    /**
+     * Returns the directory for the temporary local files.
+     *
+     * @return the temporary directory
+     */
+    File getTemporaryDirectory() {
+        return new File( baseDirectory, "tmp" );
+    }
+
+    File getSmallFile() {
+        return new File( localDirectory, "small.bin" );
+    }
+
+    File getLargeFile() {
+        return new File( localDirectory, "large.bin" );
+    }
+
+    File getWideDirectory() {
+        return new File( localDirectory, "wide" );
+    }
+
+    File getDeepDirectory() {
+        return new File( localDirectory, "deep" );
+    }
+
+
+    private static byte[] randomBytes( Random random, int size ) {
+        byte[] bytes = new byte[ size ];
+        random.nextBytes( bytes );
+        return bytes;
+    }
+
+    private static void writeFile( File file, byte[] content ) throws IOException {
+        File parent = file.getParentFile();
+        if ( !parent.exists() && !parent.mkdirs() ) {
+            throw new IOException( "failed to create " + parent );
+        }
+        OutputStream outputStream = new FileOutputStream( file );
+        try {
+            outputStream.write( content );
+        } finally {
+            outputStream.close();
+        }
+    }
+
+    private static void delete( File file ) {
+        File[] children = file.listFiles();
+        if ( children != null ) {
+            for ( File child : children ) {
+                delete( child );
+            }
+        }
+        file.delete();
+    }
+
+    private static int findFreePort() throws IOException {
+        ServerSocket socket = new ServerSocket( 0 );
+        try {
+            return socket.getLocalPort();
+        } finally {
+            socket.close();
+        }
+    }
+
+    private static void waitForPort( int port ) throws IOException, InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000L;
+        while ( true ) {
+            Socket socket = new Socket();
+            try {
+                socket.connect( new InetSocketAddress( "localhost", port ), 1000 );
+                return;
+            } catch ( IOException e ) {
+                if ( System.currentTimeMillis() > deadline ) {
+                    throw new IOException( "svnserve did not start listening on port " + port, e );
+                }
+                Thread.sleep( 100L );
+            } finally {
+                socket.close();
+            }
+        }
+    }
+
+}
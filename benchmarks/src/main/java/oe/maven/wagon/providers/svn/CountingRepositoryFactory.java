@@ -0,0 +1,212 @@
+/*-
+ * Copyright (c) 2009-2011, Oleg Estekhin
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the distribution.
+ *  * Neither the names of the copyright holders nor the names of their
+ *    contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ * DAMAGE.
+ */
+
+
+package oe.maven.wagon.providers.svn;
+
+import java.io.OutputStream;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.tmatesoft.svn.core.ISVNDirEntryHandler;
+import org.tmatesoft.svn.core.SVNDepth;
+import org.tmatesoft.svn.core.SVNDirEntry;
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.SVNNodeKind;
+import org.tmatesoft.svn.core.SVNProperties;
+import org.tmatesoft.svn.core.SVNURL;
+import org.tmatesoft.svn.core.internal.io.fs.FSRepository;
+import org.tmatesoft.svn.core.internal.io.svn.SVNRepositoryImpl;
+import org.tmatesoft.svn.core.io.ISVNEditor;
+import org.tmatesoft.svn.core.io.ISVNReporterBaton;
+import org.tmatesoft.svn.core.io.ISVNSession;
+import org.tmatesoft.svn.core.io.ISVNWorkspaceMediator;
+import org.tmatesoft.svn.core.io.SVNRepository;
+import org.tmatesoft.svn.core.io.SVNRepositoryFactory;
+
+/**
+ * The repository factory that creates sessions counting the server round-trips.
+ * <p/>
+ * Every repository access method used by the wagon counts as one round-trip, a commit counts as one round-trip
+ * regardless of the number of the edited paths. The local FSFS repository has no server, but counting the same calls
+ * makes the numbers comparable between the transports.
+ */
+class CountingRepositoryFactory extends SVNRepositoryFactory {
+
+    /** The number of the round-trips performed by all counting sessions. */
+    private static final AtomicLong ROUND_TRIPS = new AtomicLong();
+
+    private static boolean installed;
+
+
+    /**
+     * Replaces the standard {@code file://} and {@code svn://} repository factories with the counting factory.
+     *
+     * @param fileUrl the URL of some repository accessible via the {@code file://} protocol
+     * @param svnUrl the URL of some repository accessible via the {@code svn://} protocol or {@code null}
+     *
+     * @throws SVNException if the standard factories cannot be initialized
+     */
+    static synchronized void install( SVNURL fileUrl, SVNURL svnUrl ) throws SVNException {
+        if ( installed ) {
+            return;
+        }
+        // let the pool register the standard factories first, otherwise they would replace the counting one later
+        SVNRepositoryPool pool = SVNRepositoryPool.getInstance();
+        pool.discard( pool.acquire( fileUrl, null, null ) );
+        if ( svnUrl != null ) {
+            pool.discard( pool.acquire( svnUrl, null, null ) );
+        }
+        CountingRepositoryFactory factory = new CountingRepositoryFactory();
+        registerRepositoryFactory( "^file://.*$", factory );
+        registerRepositoryFactory( "^svn(\\+.+)?://.*$", factory );
+        installed = true;
+    }
+
+    /**
+     * Returns the number of the round-trips performed since the factory was installed.
+     *
+     * @return the number of the round-trips
+     */
+    static long getRoundTrips() {
+        return ROUND_TRIPS.get();
+    }
+
+
+    @Override
+    protected SVNRepository createRepositoryImpl( SVNURL location, ISVNSession options ) {
+        if ( "file".equals( location.getProtocol() ) ) {
+            return new CountingFSRepository( location, options );
+        } else {
+            return new CountingSVNRepository( location, options );
+        }
+    }
+
+
+    private static final class CountingFSRepository extends FSRepository {
+
+        CountingFSRepository( SVNURL location, ISVNSession options ) {
+            super( location, options );
+        }
+
+        @Override
+        public long getLatestRevision() throws SVNException {
+            ROUND_TRIPS.incrementAndGet();
+            return super.getLatestRevision();
+        }
+
+        @Override
+        public SVNNodeKind checkPath( String path, long revision ) throws SVNException {
+            ROUND_TRIPS.incrementAndGet();
+            return super.checkPath( path, revision );
+        }
+
+        @Override
+        public SVNDirEntry info( String path, long revision ) throws SVNException {
+            ROUND_TRIPS.incrementAndGet();
+            return super.info( path, revision );
+        }
+
+        @Override
+        public long getFile( String path, long revision, SVNProperties properties, OutputStream contents ) throws SVNException {
+            ROUND_TRIPS.incrementAndGet();
+            return super.getFile( path, revision, properties, contents );
+        }
+
+        @Override
+        public long getDir( String path, long revision, SVNProperties properties, ISVNDirEntryHandler handler ) throws SVNException {
+            ROUND_TRIPS.incrementAndGet();
+            return super.getDir( path, revision, properties, handler );
+        }
+
+        @Override
+        public void status( long revision, String target, SVNDepth depth, ISVNReporterBaton reporter, ISVNEditor editor ) throws SVNException {
+            ROUND_TRIPS.incrementAndGet();
+            super.status( revision, target, depth, reporter, editor );
+        }
+
+        @Override
+        protected ISVNEditor getCommitEditorInternal( Map locks, boolean keepLocks, SVNProperties revisionProperties, ISVNWorkspaceMediator mediator ) throws SVNException {
+            ROUND_TRIPS.incrementAndGet();
+            return super.getCommitEditorInternal( locks, keepLocks, revisionProperties, mediator );
+        }
+
+    }
+
+    private static final class CountingSVNRepository extends SVNRepositoryImpl {
+
+        CountingSVNRepository( SVNURL location, ISVNSession options ) {
+            super( location, options );
+        }
+
+        @Override
+        public long getLatestRevision() throws SVNException {
+            ROUND_TRIPS.incrementAndGet();
+            return super.getLatestRevision();
+        }
+
+        @Override
+        public SVNNodeKind checkPath( String path, long revision ) throws SVNException {
+            ROUND_TRIPS.incrementAndGet();
+            return super.checkPath( path, revision );
+        }
+
+        @Override
+        public SVNDirEntry info( String path, long revision ) throws SVNException {
+            ROUND_TRIPS.incrementAndGet();
+            return super.info( path, revision );
+        }
+
+        @Override
+        public long getFile( String path, long revision, SVNProperties properties, OutputStream contents ) throws SVNException {
+            ROUND_TRIPS.incrementAndGet();
+            return super.getFile( path, revision, properties, contents );
+        }
+
+        @Override
+        public long getDir( String path, long revision, SVNProperties properties, ISVNDirEntryHandler handler ) throws SVNException {
+            ROUND_TRIPS.incrementAndGet();
+            return super.getDir( path, revision, properties, handler );
+        }
+
+        @Override
+        public void status( long revision, String target, SVNDepth depth, ISVNReporterBaton reporter, ISVNEditor editor ) throws SVNException {
+            ROUND_TRIPS.incrementAndGet();
+            super.status( revision, target, depth, reporter, editor );
+        }
+
+        @Override
+        protected ISVNEditor getCommitEditorInternal( Map locks, boolean keepLocks, SVNProperties revisionProperties, ISVNWorkspaceMediator mediator ) throws SVNException {
+            ROUND_TRIPS.incrementAndGet();
+            return super.getCommitEditorInternal( locks, keepLocks, revisionProperties, mediator );
+        }
+
+    }
+
+}
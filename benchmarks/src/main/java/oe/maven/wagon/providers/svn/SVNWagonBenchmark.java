@@ -0,0 +1,246 @@
+/*-
+ * Copyright (c) 2009-2011, Oleg Estekhin
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the distribution.
+ *  * Neither the names of the copyright holders nor the names of their
+ *    contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ * DAMAGE.
+ */
+
+
+package oe.maven.wagon.providers.svn;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The benchmarks of the wagon operations.
+ * <p/>
+ * Each benchmark reports the operation throughput and the {@code roundTrips} secondary result, which is the rate of
+ * the server round-trips; dividing it by the primary score gives the number of the round-trips per operation. Run the
+ * benchmarks with {@code -prof gc} to report the allocation rate.
+ */
+@BenchmarkMode( Mode.Throughput )
+@OutputTimeUnit( TimeUnit.SECONDS )
+@Warmup( iterations = 3, time = 5 )
+@Measurement( iterations = 5, time = 5 )
+@Fork( 1 )
+public class SVNWagonBenchmark {
+
+    /** The connected wagon and the per-thread local state. */
+    @State( Scope.Thread )
+    public static class WagonState {
+
+        SVNWagon wagon;
+
+        File destination;
+
+        File directory;
+
+        long timestamp;
+
+        private int sequence;
+
+        @Setup( Level.Trial )
+        public void setUp( BenchmarkRepository repository ) throws Exception {
+            directory = new File( repository.getTemporaryDirectory(), Thread.currentThread().getName() );
+            if ( !directory.exists() && !directory.mkdirs() ) {
+                throw new IOException( "failed to create " + directory );
+            }
+            destination = new File( directory, "destination.bin" );
+            timestamp = System.currentTimeMillis() + TimeUnit.DAYS.toMillis( 1L );
+            wagon = createWagon( repository );
+            wagon.connect( repository.getRepository() );
+        }
+
+        SVNWagon createWagon( BenchmarkRepository repository ) {
+            return repository.createWagon();
+        }
+
+        @TearDown( Level.Trial )
+        public void tearDown() throws Exception {
+            wagon.disconnect();
+        }
+
+        /**
+         * Returns a repository path that was not used by the previous write operations.
+         *
+         * @param name the name of the resource
+         *
+         * @return the unique repository path
+         */
+        String nextPath( String name ) {
+            return "benchmark/" + Thread.currentThread().getName() + "/" + sequence++ + "/" + name;
+        }
+
+    }
+
+    /** The connected wagon that uploads the large files through the delta pipeline. */
+    @State( Scope.Thread )
+    public static class PipelinedWagonState extends WagonState {
+
+        @Override
+        SVNWagon createWagon( BenchmarkRepository repository ) {
+            SVNWagon wagon = repository.createWagon();
+            wagon.setPipelinedPut( true );
+            return wagon;
+        }
+
+    }
+
+    /** The round-trip counter reported as the secondary result. */
+    @State( Scope.Thread )
+    @AuxCounters( AuxCounters.Type.OPERATIONS )
+    public static class RoundTrips {
+
+        public long roundTrips;
+
+        private long start;
+
+        @Setup( Level.Iteration )
+        public void reset() {
+            roundTrips = 0L;
+        }
+
+        void begin() {
+            start = CountingRepositoryFactory.getRoundTrips();
+        }
+
+        void end() {
+            roundTrips += CountingRepositoryFactory.getRoundTrips() - start;
+        }
+
+    }
+
+
+    @Benchmark
+    public boolean connect( BenchmarkRepository repository, RoundTrips counter ) throws Exception {
+        // the connection is established lazily, the first request is a part of the measured operation
+        SVNWagon wagon = repository.createWagon();
+        counter.begin();
+        wagon.connect( repository.getRepository() );
+        try {
+            return wagon.resourceExists( BenchmarkRepository.SMALL_FILE );
+        } finally {
+            wagon.disconnect();
+            counter.end();
+        }
+    }
+
+    @Benchmark
+    public File getSmall( WagonState state, RoundTrips counter ) throws Exception {
+        counter.begin();
+        state.wagon.get( BenchmarkRepository.SMALL_FILE, state.destination );
+        counter.end();
+        return state.destination;
+    }
+
+    @Benchmark
+    public File getLarge( WagonState state, RoundTrips counter ) throws Exception {
+        counter.begin();
+        state.wagon.get( BenchmarkRepository.LARGE_FILE, state.destination );
+        counter.end();
+        return state.destination;
+    }
+
+    @Benchmark
+    public boolean getIfNewer( WagonState state, RoundTrips counter ) throws Exception {
+        counter.begin();
+        boolean result = state.wagon.getIfNewer( BenchmarkRepository.SMALL_FILE, state.destination, state.timestamp );
+        counter.end();
+        return result;
+    }
+
+    @Benchmark
+    public boolean resourceExists( WagonState state, RoundTrips counter ) throws Exception {
+        counter.begin();
+        boolean result = state.wagon.resourceExists( BenchmarkRepository.SMALL_FILE );
+        counter.end();
+        return result;
+    }
+
+    @Benchmark
+    public void putSmall( BenchmarkRepository repository, WagonState state, RoundTrips counter ) throws Exception {
+        String path = state.nextPath( "small.bin" );
+        counter.begin();
+        state.wagon.put( repository.getSmallFile(), path );
+        counter.end();
+    }
+
+    @Benchmark
+    public void putLarge( BenchmarkRepository repository, WagonState state, RoundTrips counter ) throws Exception {
+        String path = state.nextPath( "large.bin" );
+        counter.begin();
+        state.wagon.put( repository.getLargeFile(), path );
+        counter.end();
+    }
+
+    @Benchmark
+    public void putLargePipelined( BenchmarkRepository repository, PipelinedWagonState state, RoundTrips counter ) throws Exception {
+        String path = state.nextPath( "large.bin" );
+        counter.begin();
+        state.wagon.put( repository.getLargeFile(), path );
+        counter.end();
+    }
+
+    @Benchmark
+    public void putDirectoryWide( BenchmarkRepository repository, WagonState state, RoundTrips counter ) throws Exception {
+        String path = state.nextPath( "wide" );
+        counter.begin();
+        state.wagon.putDirectory( repository.getWideDirectory(), path );
+        counter.end();
+    }
+
+    @Benchmark
+    public void putDirectoryDeep( BenchmarkRepository repository, WagonState state, RoundTrips counter ) throws Exception {
+        String path = state.nextPath( "deep" );
+        counter.begin();
+        state.wagon.putDirectory( repository.getDeepDirectory(), path );
+        counter.end();
+    }
+
+    @Benchmark
+    public List<String> getFileList( WagonState state, RoundTrips counter ) throws Exception {
+        counter.begin();
+        List<String> result = state.wagon.getFileList( BenchmarkRepository.WIDE_DIRECTORY );
+        counter.end();
+        return result;
+    }
+
+}
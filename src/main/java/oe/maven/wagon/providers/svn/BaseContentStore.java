@@ -0,0 +1,201 @@
+/*-
+ * Copyright (c) 2009-2011, Oleg Estekhin
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the distribution.
+ *  * Neither the names of the copyright holders nor the names of their
+ *    contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ * DAMAGE.
+ */
+
+package oe.maven.wagon.providers.svn;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * The local store of the repository file contents that are used as the bases for delta uploads.
+ * <p/>
+ * The contents are keyed by the repository path and the revision in which the file was last changed, only the most
+ * recent revision of every path is kept.
+ */
+class BaseContentStore {
+
+    /** The store directory. */
+    private final File directory;
+
+
+    /**
+     * Creates a new store.
+     *
+     * @param directory the store directory
+     */
+    BaseContentStore( File directory ) {
+        this.directory = directory;
+    }
+
+
+    /**
+     * Returns the stored content of the specified file revision.
+     *
+     * @param repositoryPath the file path relative to the Subversion repository root
+     * @param revision the revision in which the file was last changed
+     *
+     * @return the stored content or {@code null} if the content is not stored
+     */
+    File getContent( String repositoryPath, long revision ) {
+        File file = new File( getPathDirectory( repositoryPath ), Long.toString( revision ) );
+        return file.isFile() ? file : null;
+    }
+
+    /**
+     * Returns the revision of the stored content of the specified file.
+     *
+     * @param repositoryPath the file path relative to the Subversion repository root
+     *
+     * @return the revision in which the file was last changed, or -1 if no content of the file is stored
+     */
+    long getRevision( String repositoryPath ) {
+        String[] names = getPathDirectory( repositoryPath ).list();
+        if ( names != null ) {
+            for ( String name : names ) {
+                try {
+                    return Long.parseLong( name );
+                } catch ( NumberFormatException ignored ) {
+                    // a temporary file
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Stores the content of the specified file revision replacing the contents of the other revisions of that file.
+     *
+     * @param repositoryPath the file path relative to the Subversion repository root
+     * @param revision the revision in which the file was last changed
+     * @param content the file content
+     *
+     * @throws IOException if an I/O error occurred
+     */
+    void putContent( String repositoryPath, long revision, File content ) throws IOException {
+        File pathDirectory = getPathDirectory( repositoryPath );
+        if ( !pathDirectory.exists() && !pathDirectory.mkdirs() ) {
+            throw new IOException( "failed to create " + pathDirectory );
+        }
+        File[] oldFiles = pathDirectory.listFiles();
+        if ( oldFiles != null ) {
+            for ( File oldFile : oldFiles ) {
+                if ( !oldFile.delete() ) {
+                    throw new IOException( "failed to delete " + oldFile );
+                }
+            }
+        }
+        File tempFile = new File( pathDirectory, revision + ".tmp" );
+        copy( content, tempFile );
+        if ( !tempFile.renameTo( new File( pathDirectory, Long.toString( revision ) ) ) ) {
+            tempFile.delete();
+            throw new IOException( "failed to store " + content );
+        }
+    }
+
+
+    /**
+     * Returns the hex-encoded MD5 checksum of the specified file.
+     *
+     * @param file the file
+     *
+     * @return the checksum
+     *
+     * @throws IOException if an I/O error occurred
+     */
+    static String getChecksum( File file ) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance( "MD5" );
+        } catch ( NoSuchAlgorithmException e ) {
+            throw new AssertionError( e );
+        }
+        InputStream inputStream = new FileInputStream( file );
+        try {
+            byte[] buffer = new byte[ 8192 ];
+            int count;
+            while ( ( count = inputStream.read( buffer ) ) >= 0 ) {
+                digest.update( buffer, 0, count );
+            }
+        } finally {
+            inputStream.close();
+        }
+        return toHex( digest.digest() );
+    }
+
+
+    private File getPathDirectory( String repositoryPath ) {
+        try {
+            return new File( directory, toHex( MessageDigest.getInstance( "MD5" ).digest( repositoryPath.getBytes( "UTF-8" ) ) ) );
+        } catch ( NoSuchAlgorithmException e ) {
+            throw new AssertionError( e );
+        } catch ( IOException e ) {
+            throw new AssertionError( e );
+        }
+    }
+
+    private static void copy( File source, File target ) throws IOException {
+        InputStream inputStream = new FileInputStream( source );
+        try {
+            OutputStream outputStream = new FileOutputStream( target );
+            try {
+                byte[] buffer = new byte[ 8192 ];
+                int count;
+                while ( ( count = inputStream.read( buffer ) ) >= 0 ) {
+                    outputStream.write( buffer, 0, count );
+                }
+            } finally {
+                outputStream.close();
+            }
+        } finally {
+            inputStream.close();
+        }
+    }
+
+    /**
+     * Returns the hex-encoded representation of the specified digest.
+     *
+     * @param bytes the digest
+     *
+     * @return the hex string
+     */
+    static String toHex( byte[] bytes ) {
+        StringBuilder builder = new StringBuilder( bytes.length * 2 );
+        for ( byte b : bytes ) {
+            builder.append( Character.forDigit( ( b >> 4 ) & 0xf, 16 ) ).append( Character.forDigit( b & 0xf, 16 ) );
+        }
+        return builder.toString();
+    }
+
+}
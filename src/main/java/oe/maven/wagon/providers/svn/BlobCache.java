@@ -0,0 +1,316 @@
+/*-
+ * Copyright (c) 2009-2011, Oleg Estekhin
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the distribution.
+ *  * Neither the names of the copyright holders nor the names of their
+ *    contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ * DAMAGE.
+ */
+
+package oe.maven.wagon.providers.svn;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.Channels;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+/**
+ * The persistent content-addressed cache of the downloaded files.
+ * <p/>
+ * The file contents are stored under their MD5 checksums, and the index file maps the repository URL of the file and
+ * the revision to the checksum and the last modification time of the file. The total size of the stored contents is
+ * bounded, the least recently used contents are evicted first.
+ * <p/>
+ * The cache can be shared by several processes, all modifications of the cache are performed while holding the lock
+ * on the lock file. The contents are read while holding a shared lock on the content file, and the locked contents are
+ * not evicted.
+ */
+class BlobCache {
+
+    private static final String INDEX_FILE_NAME = "index.properties";
+
+    private static final String LOCK_FILE_NAME = "index.lock";
+
+    private static final String BLOBS_DIRECTORY_NAME = "blobs";
+
+
+    /** The cache directory. */
+    private final File directory;
+
+    /** The directory of the stored contents. */
+    private final File blobsDirectory;
+
+    /** The maximum total size of the stored contents in bytes. */
+    private final long maximumSize;
+
+    /** The index loaded from the index file. */
+    private final Properties index = new Properties();
+
+    /** The last modification time of the index file when it was loaded. */
+    private long indexLastModified = -1;
+
+    /** The length of the index file when it was loaded. */
+    private long indexLength = -1;
+
+
+    /**
+     * Creates a new cache.
+     *
+     * @param directory the cache directory
+     * @param maximumSize the maximum total size of the stored contents in bytes
+     */
+    BlobCache( File directory, long maximumSize ) {
+        this.directory = directory;
+        this.maximumSize = maximumSize;
+        blobsDirectory = new File( directory, BLOBS_DIRECTORY_NAME );
+    }
+
+
+    /**
+     * Returns the checksum and the last modification time of the specified file revision.
+     *
+     * @param url the file URL
+     * @param revision the revision
+     *
+     * @return the checksum and the last modification time, or {@code null} if the file revision is not indexed
+     *
+     * @throws IOException if an I/O error occurred
+     */
+    synchronized String[] getEntry( String url, long revision ) throws IOException {
+        loadIndex();
+        String value = index.getProperty( url + '@' + revision );
+        if ( value == null ) {
+            return null;
+        }
+        int separator = value.indexOf( ' ' );
+        return new String[] { value.substring( 0, separator ), value.substring( separator + 1 ) };
+    }
+
+    /**
+     * Opens the stored content with the specified checksum and marks it as recently used.
+     * <p/>
+     * The content is locked until the returned stream is closed, so that it is not evicted while it is read.
+     *
+     * @param checksum the content checksum
+     *
+     * @return the stream of the stored content or {@code null} if such content is not stored
+     *
+     * @throws IOException if the content cannot be locked
+     */
+    InputStream openContent( String checksum ) throws IOException {
+        File file = new File( blobsDirectory, checksum );
+        RandomAccessFile blobFile;
+        try {
+            blobFile = new RandomAccessFile( file, "r" );
+        } catch ( FileNotFoundException e ) {
+            return null;
+        }
+        try {
+            blobFile.getChannel().lock( 0, Long.MAX_VALUE, true );
+        } catch ( OverlappingFileLockException e ) {
+            // the content is already locked by another reader in this process
+        } catch ( IOException e ) {
+            blobFile.close();
+            throw e;
+        }
+        file.setLastModified( System.currentTimeMillis() );
+        return Channels.newInputStream( blobFile.getChannel() );
+    }
+
+    /**
+     * Stores the content of the specified file revision and evicts the least recently used contents if the cache
+     * becomes too big.
+     *
+     * @param url the file URL
+     * @param revisions the revisions of the file that have the same content
+     * @param checksum the content checksum
+     * @param lastModified the last modification time of the file
+     * @param content the file content
+     *
+     * @throws IOException if an I/O error occurred
+     */
+    void putContent( String url, long[] revisions, String checksum, long lastModified, File content ) throws IOException {
+        synchronized ( BlobCache.class ) {
+            if ( !blobsDirectory.exists() && !blobsDirectory.mkdirs() ) {
+                throw new IOException( "failed to create " + blobsDirectory );
+            }
+            RandomAccessFile lockFile = new RandomAccessFile( new File( directory, LOCK_FILE_NAME ), "rw" );
+            try {
+                FileLock lock = lockFile.getChannel().lock();
+                try {
+                    File blobFile = new File( blobsDirectory, checksum );
+                    if ( !blobFile.exists() ) {
+                        File tempFile = new File( blobsDirectory, checksum + ".tmp" );
+                        copy( content, tempFile );
+                        if ( !tempFile.renameTo( blobFile ) ) {
+                            tempFile.delete();
+                            throw new IOException( "failed to store " + content );
+                        }
+                    }
+                    synchronized ( this ) {
+                        loadIndex();
+                        for ( long revision : revisions ) {
+                            index.setProperty( url + '@' + revision, checksum + ' ' + lastModified );
+                        }
+                        evict();
+                        storeIndex();
+                    }
+                } finally {
+                    lock.release();
+                }
+            } finally {
+                lockFile.close();
+            }
+        }
+    }
+
+
+    private void evict() {
+        File[] blobFiles = blobsDirectory.listFiles();
+        if ( blobFiles == null ) {
+            return;
+        }
+        long totalSize = 0;
+        for ( File blobFile : blobFiles ) {
+            totalSize += blobFile.length();
+        }
+        if ( totalSize <= maximumSize ) {
+            return;
+        }
+        Arrays.sort( blobFiles, new Comparator<File>() {
+            public int compare( File o1, File o2 ) {
+                long l1 = o1.lastModified();
+                long l2 = o2.lastModified();
+                return l1 < l2 ? -1 : l1 == l2 ? 0 : 1;
+            }
+        } );
+        Set<String> evictedChecksums = new HashSet<String>();
+        for ( int i = 0; i < blobFiles.length && totalSize > maximumSize; i++ ) {
+            long length = blobFiles[ i ].length();
+            if ( !isLocked( blobFiles[ i ] ) && blobFiles[ i ].delete() ) {
+                totalSize -= length;
+                evictedChecksums.add( blobFiles[ i ].getName() );
+            }
+        }
+        for ( Iterator<Map.Entry<Object, Object>> iterator = index.entrySet().iterator(); iterator.hasNext(); ) {
+            String value = ( String ) iterator.next().getValue();
+            if ( evictedChecksums.contains( value.substring( 0, value.indexOf( ' ' ) ) ) ) {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Checks whether the specified content is being read.
+     *
+     * @param blobFile the content file
+     *
+     * @return {@code true} if the content is locked by some reader or its lock state cannot be determined
+     */
+    private static boolean isLocked( File blobFile ) {
+        try {
+            RandomAccessFile file = new RandomAccessFile( blobFile, "rw" );
+            try {
+                FileLock lock = file.getChannel().tryLock();
+                if ( lock == null ) {
+                    return true;
+                }
+                lock.release();
+                return false;
+            } finally {
+                file.close();
+            }
+        } catch ( OverlappingFileLockException e ) {
+            return true;
+        } catch ( IOException e ) {
+            return true;
+        }
+    }
+
+    private void loadIndex() throws IOException {
+        File indexFile = new File( directory, INDEX_FILE_NAME );
+        if ( indexFile.lastModified() == indexLastModified && indexFile.length() == indexLength ) {
+            return;
+        }
+        index.clear();
+        indexLastModified = indexFile.lastModified();
+        indexLength = indexFile.length();
+        if ( indexFile.exists() ) {
+            InputStream inputStream = new FileInputStream( indexFile );
+            try {
+                index.load( inputStream );
+            } finally {
+                inputStream.close();
+            }
+        }
+    }
+
+    private void storeIndex() throws IOException {
+        File indexFile = new File( directory, INDEX_FILE_NAME );
+        File tempFile = new File( directory, INDEX_FILE_NAME + ".tmp" );
+        OutputStream outputStream = new FileOutputStream( tempFile );
+        try {
+            index.store( outputStream, null );
+        } finally {
+            outputStream.close();
+        }
+        if ( indexFile.exists() && !indexFile.delete() || !tempFile.renameTo( indexFile ) ) {
+            throw new IOException( "failed to store " + indexFile );
+        }
+        indexLastModified = indexFile.lastModified();
+        indexLength = indexFile.length();
+    }
+
+    private static void copy( File source, File target ) throws IOException {
+        InputStream inputStream = new FileInputStream( source );
+        try {
+            OutputStream outputStream = new FileOutputStream( target );
+            try {
+                byte[] buffer = new byte[ 8192 ];
+                int count;
+                while ( ( count = inputStream.read( buffer ) ) >= 0 ) {
+                    outputStream.write( buffer, 0, count );
+                }
+            } finally {
+                outputStream.close();
+            }
+        } finally {
+            inputStream.close();
+        }
+    }
+
+}
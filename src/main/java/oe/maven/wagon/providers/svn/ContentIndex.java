@@ -0,0 +1,204 @@
+/*-
+ * Copyright (c) 2009-2011, Oleg Estekhin
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the distribution.
+ *  * Neither the names of the copyright holders nor the names of their
+ *    contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ * DAMAGE.
+ */
+
+
+package oe.maven.wagon.providers.svn;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.nio.channels.FileLock;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Properties;
+
+/**
+ * The persistent index of the file contents of a repository directory tree.
+ * <p/>
+ * The index maps the MD5 checksums of the file contents to the repository paths and the revisions in which the files
+ * had those contents. A path in a given revision never changes, so the entries never become stale and remain valid
+ * copy sources even after the files are deleted. The index also records the revision up to which the tree was indexed,
+ * so that it can be updated incrementally from the repository log.
+ * <p/>
+ * The index file can be shared by several processes, all modifications of the index file are performed while holding
+ * the lock on the lock file and the entries recorded by the other processes are merged.
+ */
+class ContentIndex {
+
+    private static final String REVISION_KEY = "revision";
+
+
+    /** The index file. */
+    private final File file;
+
+    /** The index loaded from the index file and the recorded entries that are not stored yet. */
+    private final Properties index = new Properties();
+
+    /** The recorded entries that are not stored yet. */
+    private final Properties addedEntries = new Properties();
+
+
+    /**
+     * Creates a new index.
+     *
+     * @param directory the directory of the index files
+     * @param repositoryUuid the repository UUID
+     * @param repositoryPath the path of the indexed tree relative to the Subversion repository root
+     */
+    ContentIndex( File directory, String repositoryUuid, String repositoryPath ) {
+        String pathHash;
+        try {
+            pathHash = BaseContentStore.toHex( MessageDigest.getInstance( "MD5" ).digest( repositoryPath.getBytes( "UTF-8" ) ) );
+        } catch ( NoSuchAlgorithmException e ) {
+            throw new AssertionError( e );
+        } catch ( UnsupportedEncodingException e ) {
+            throw new AssertionError( e );
+        }
+        file = new File( directory, repositoryUuid + '-' + pathHash + ".properties" );
+    }
+
+
+    /**
+     * Loads the index file.
+     *
+     * @throws IOException if an I/O error occurred
+     */
+    synchronized void load() throws IOException {
+        index.clear();
+        loadInto( index );
+        index.putAll( addedEntries );
+    }
+
+    /**
+     * Returns the revision up to which the tree is indexed.
+     *
+     * @return the indexed revision, or -1 if the tree was never indexed
+     */
+    synchronized long getRevision() {
+        String revision = index.getProperty( REVISION_KEY );
+        return revision == null ? -1 : Long.parseLong( revision );
+    }
+
+    /**
+     * Returns the file that has the content with the specified checksum.
+     *
+     * @param checksum the hex-encoded MD5 checksum of the content
+     *
+     * @return the file path relative to the Subversion repository root and the revision, or {@code null} if such
+     * content is not indexed
+     */
+    synchronized String[] getEntry( String checksum ) {
+        String value = index.getProperty( checksum );
+        if ( value == null ) {
+            return null;
+        }
+        int separator = value.indexOf( ' ' );
+        return new String[] { value.substring( separator + 1 ), value.substring( 0, separator ) };
+    }
+
+    /**
+     * Records the content of the specified file revision, the entry is stored by the next {@link #store(long)} call.
+     *
+     * @param checksum the hex-encoded MD5 checksum of the content
+     * @param repositoryPath the file path relative to the Subversion repository root
+     * @param revision the revision in which the file had the content
+     */
+    synchronized void addEntry( String checksum, String repositoryPath, long revision ) {
+        String value = Long.toString( revision ) + ' ' + repositoryPath;
+        index.setProperty( checksum, value );
+        addedEntries.setProperty( checksum, value );
+    }
+
+    /**
+     * Stores the recorded entries and the indexed revision, merging them with the entries stored by the other
+     * processes.
+     *
+     * @param revision the revision up to which the tree is indexed
+     *
+     * @throws IOException if an I/O error occurred
+     */
+    void store( long revision ) throws IOException {
+        synchronized ( ContentIndex.class ) {
+            File directory = file.getAbsoluteFile().getParentFile();
+            if ( !directory.exists() && !directory.mkdirs() ) {
+                throw new IOException( "failed to create " + directory );
+            }
+            RandomAccessFile lockFile = new RandomAccessFile( new File( directory, file.getName() + ".lock" ), "rw" );
+            try {
+                FileLock lock = lockFile.getChannel().lock();
+                try {
+                    synchronized ( this ) {
+                        Properties storedIndex = new Properties();
+                        loadInto( storedIndex );
+                        String storedRevision = storedIndex.getProperty( REVISION_KEY );
+                        storedIndex.putAll( addedEntries );
+                        if ( storedRevision == null || Long.parseLong( storedRevision ) < revision ) {
+                            storedIndex.setProperty( REVISION_KEY, Long.toString( revision ) );
+                        }
+                        File tempFile = new File( directory, file.getName() + ".tmp" );
+                        OutputStream outputStream = new FileOutputStream( tempFile );
+                        try {
+                            storedIndex.store( outputStream, null );
+                        } finally {
+                            outputStream.close();
+                        }
+                        if ( file.exists() && !file.delete() || !tempFile.renameTo( file ) ) {
+                            throw new IOException( "failed to store " + file );
+                        }
+                        index.clear();
+                        index.putAll( storedIndex );
+                        addedEntries.clear();
+                    }
+                } finally {
+                    lock.release();
+                }
+            } finally {
+                lockFile.close();
+            }
+        }
+    }
+
+
+    private void loadInto( Properties properties ) throws IOException {
+        if ( file.exists() ) {
+            InputStream inputStream = new FileInputStream( file );
+            try {
+                properties.load( inputStream );
+            } finally {
+                inputStream.close();
+            }
+        }
+    }
+
+}
@@ -0,0 +1,310 @@
+/*-
+ * Copyright (c) 2009-2011, Oleg Estekhin
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the distribution.
+ *  * Neither the names of the copyright holders nor the names of their
+ *    contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ * DAMAGE.
+ */
+
+
+package oe.maven.wagon.providers.svn;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.tmatesoft.svn.core.SVNCancelException;
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.io.ISVNDeltaConsumer;
+import org.tmatesoft.svn.core.io.diff.SVNDeltaGenerator;
+import org.tmatesoft.svn.core.io.diff.SVNDiffWindow;
+
+/**
+ * The delta upload that overlaps reading the local file, generating the delta windows and sending them.
+ * <p/>
+ * The reader stage reads the local file ahead into a bounded queue of chunks, the generator stage computes the delta
+ * windows and the content checksum from those chunks, and the calling thread passes the windows to the delta
+ * consumer, which encodes and sends them. The transfer listeners are notified on the calling thread, in the order the
+ * chunks were read and before the windows generated from them are sent.
+ */
+class DeltaPipeline {
+
+    /** The size of the chunks the local file is read in. */
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    /** The maximum number of the chunks read ahead of the generator stage. */
+    private static final int CHUNK_QUEUE_SIZE = 16;
+
+    /** The maximum number of the windows and progress chunks generated ahead of the calling thread. */
+    private static final int WINDOW_QUEUE_SIZE = 8;
+
+    /** The marker of the end of a queue. */
+    private static final Object END = new Object();
+
+
+    /** The executor that runs the reader and the generator stages, must be able to run both at the same time. */
+    private final ExecutorService executor;
+
+
+    /**
+     * Creates a new pipeline.
+     *
+     * @param executor the executor that runs the reader and the generator stages, must be able to run two tasks at the
+     * same time
+     */
+    DeltaPipeline( ExecutorService executor ) {
+        this.executor = executor;
+    }
+
+
+    /**
+     * Sends the delta between the base content and the local file to the specified consumer.
+     * <p/>
+     * The consumer must have already received the {@link ISVNDeltaConsumer#applyTextDelta} call.
+     *
+     * @param path the path of the file passed to the consumer
+     * @param baseContent the base content, or {@code null} to send the full content
+     * @param localFile the local file
+     * @param consumer the delta consumer
+     * @param listener the listener notified about the read chunks, or {@code null}
+     *
+     * @return the hex-encoded MD5 checksum of the local file content
+     *
+     * @throws IOException if the local file cannot be read
+     * @throws SVNException if an SVN error occurred
+     */
+    String sendDelta( final String path, final File baseContent, final File localFile, ISVNDeltaConsumer consumer, ProgressListener listener ) throws IOException, SVNException {
+        final BlockingQueue<Object> chunks = new ArrayBlockingQueue<Object>( CHUNK_QUEUE_SIZE );
+        final BlockingQueue<Object> windows = new ArrayBlockingQueue<Object>( WINDOW_QUEUE_SIZE );
+        Future<Void> reader = executor.submit( new Callable<Void>() {
+            public Void call() throws Exception {
+                read( localFile, chunks );
+                return null;
+            }
+        } );
+        Future<String> generator = executor.submit( new Callable<String>() {
+            public String call() throws Exception {
+                try {
+                    return generate( path, baseContent, chunks, windows );
+                } finally {
+                    windows.put( END );
+                }
+            }
+        } );
+        try {
+            for ( Object item = windows.take(); item != END; item = windows.take() ) {
+                if ( item instanceof byte[] ) {
+                    if ( listener != null ) {
+                        listener.chunkRead( ( byte[] ) item );
+                    }
+                } else {
+                    OutputStream outputStream = consumer.textDeltaChunk( path, ( SVNDiffWindow ) item );
+                    if ( outputStream != null ) {
+                        outputStream.close();
+                    }
+                }
+            }
+            String checksum = generator.get();
+            consumer.textDeltaEnd( path );
+            return checksum;
+        } catch ( InterruptedException e ) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException( "interrupted while sending " + path );
+        } catch ( ExecutionException e ) {
+            Throwable cause = e.getCause();
+            if ( cause instanceof IOException ) {
+                throw ( IOException ) cause;
+            } else if ( cause instanceof SVNException ) {
+                throw ( SVNException ) cause;
+            } else if ( cause instanceof RuntimeException ) {
+                throw ( RuntimeException ) cause;
+            } else if ( cause instanceof Error ) {
+                throw ( Error ) cause;
+            } else {
+                throw new AssertionError( cause );
+            }
+        } finally {
+            reader.cancel( true );
+            generator.cancel( true );
+        }
+    }
+
+
+    private static void read( File localFile, BlockingQueue<Object> chunks ) throws InterruptedException {
+        try {
+            InputStream inputStream = new FileInputStream( localFile );
+            try {
+                byte[] buffer = new byte[ CHUNK_SIZE ];
+                int count;
+                while ( ( count = inputStream.read( buffer ) ) >= 0 ) {
+                    if ( count > 0 ) {
+                        byte[] chunk = new byte[ count ];
+                        System.arraycopy( buffer, 0, chunk, 0, count );
+                        chunks.put( chunk );
+                    }
+                }
+            } finally {
+                inputStream.close();
+            }
+        } catch ( IOException e ) {
+            chunks.put( e );
+            return;
+        }
+        chunks.put( END );
+    }
+
+    private static String generate( String path, File baseContent, BlockingQueue<Object> chunks, final BlockingQueue<Object> windows ) throws IOException, SVNException {
+        InputStream targetStream = new ChunkInputStream( chunks, windows );
+        ISVNDeltaConsumer queueConsumer = new ISVNDeltaConsumer() {
+
+            public void applyTextDelta( String path, String baseChecksum ) {
+            }
+
+            public OutputStream textDeltaChunk( String path, SVNDiffWindow diffWindow ) throws SVNException {
+                // the generator reuses the window data buffer, the queued window needs its own copy
+                put( windows, diffWindow.clone( ByteBuffer.allocate( diffWindow.getDataLength() ) ) );
+                return null;
+            }
+
+            public void textDeltaEnd( String path ) {
+            }
+
+        };
+        SVNDeltaGenerator deltaGenerator = new SVNDeltaGenerator();
+        if ( baseContent == null ) {
+            return deltaGenerator.sendDelta( path, targetStream, queueConsumer, true );
+        }
+        InputStream baseStream = new FileInputStream( baseContent );
+        try {
+            return deltaGenerator.sendDelta( path, baseStream, 0, targetStream, queueConsumer, true );
+        } finally {
+            baseStream.close();
+        }
+    }
+
+    private static void put( BlockingQueue<Object> queue, Object item ) throws SVNCancelException {
+        try {
+            queue.put( item );
+        } catch ( InterruptedException e ) {
+            Thread.currentThread().interrupt();
+            throw new SVNCancelException();
+        }
+    }
+
+
+    /**
+     * The listener notified about the chunks of the local file read by the pipeline.
+     */
+    interface ProgressListener {
+
+        /**
+         * Called on the sending thread for every read chunk of the local file, in the order the chunks were read.
+         *
+         * @param chunk the chunk
+         */
+        void chunkRead( byte[] chunk );
+
+    }
+
+    /**
+     * The input stream that reads the chunks queued by the reader stage and passes every chunk to the window queue
+     * before it is used to generate the windows.
+     */
+    private static class ChunkInputStream extends InputStream {
+
+        private final BlockingQueue<Object> chunks;
+
+        private final BlockingQueue<Object> windows;
+
+        private byte[] chunk;
+
+        private int position;
+
+        private boolean ended;
+
+
+        ChunkInputStream( BlockingQueue<Object> chunks, BlockingQueue<Object> windows ) {
+            this.chunks = chunks;
+            this.windows = windows;
+        }
+
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[ 1 ];
+            return read( b, 0, 1 ) < 0 ? -1 : b[ 0 ] & 0xff;
+        }
+
+        @Override
+        public int read( byte[] b, int off, int len ) throws IOException {
+            if ( len == 0 ) {
+                return 0;
+            }
+            if ( chunk == null || position == chunk.length ) {
+                if ( ended || !nextChunk() ) {
+                    return -1;
+                }
+            }
+            int count = Math.min( len, chunk.length - position );
+            System.arraycopy( chunk, position, b, off, count );
+            position += count;
+            return count;
+        }
+
+
+        private boolean nextChunk() throws IOException {
+            Object item;
+            try {
+                item = chunks.take();
+                if ( item instanceof byte[] ) {
+                    windows.put( item );
+                }
+            } catch ( InterruptedException e ) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            }
+            if ( item == END ) {
+                ended = true;
+                return false;
+            } else if ( item instanceof IOException ) {
+                throw ( IOException ) item;
+            }
+            chunk = ( byte[] ) item;
+            position = 0;
+            return true;
+        }
+
+    }
+
+}
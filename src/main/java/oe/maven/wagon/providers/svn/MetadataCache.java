@@ -0,0 +1,158 @@
+/*-
+ * Copyright (c) 2009-2011, Oleg Estekhin
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the distribution.
+ *  * Neither the names of the copyright holders nor the names of their
+ *    contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ * DAMAGE.
+ */
+
+package oe.maven.wagon.providers.svn;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.tmatesoft.svn.core.SVNDirEntry;
+import org.tmatesoft.svn.core.SVNNodeKind;
+
+/**
+ * The size-bounded least-recently-used cache of the repository metadata.
+ * <p/>
+ * The node kinds, the entries and the directory listings are keyed by the repository path and the revision they were
+ * requested for.
+ */
+class MetadataCache {
+
+    private static final int NODE_KIND = 0;
+
+    private static final int ENTRY = 1;
+
+    private static final int LISTING = 2;
+
+
+    /** The cached values in the access order. */
+    private final Map<Key, Object> values;
+
+
+    /**
+     * Creates a new cache.
+     *
+     * @param maximumSize the maximum number of the cached values
+     */
+    MetadataCache( int maximumSize ) {
+        values = new LruMap( maximumSize );
+    }
+
+
+    SVNNodeKind getNodeKind( String repositoryPath, long revision ) {
+        return ( SVNNodeKind ) values.get( new Key( NODE_KIND, repositoryPath, revision ) );
+    }
+
+    void putNodeKind( String repositoryPath, long revision, SVNNodeKind nodeKind ) {
+        values.put( new Key( NODE_KIND, repositoryPath, revision ), nodeKind );
+    }
+
+    SVNDirEntry getEntry( String repositoryPath, long revision ) {
+        return ( SVNDirEntry ) values.get( new Key( ENTRY, repositoryPath, revision ) );
+    }
+
+    void putEntry( String repositoryPath, long revision, SVNDirEntry entry ) {
+        values.put( new Key( ENTRY, repositoryPath, revision ), entry );
+    }
+
+    @SuppressWarnings( "unchecked" )
+    List<String> getListing( String repositoryPath, long revision ) {
+        return ( List<String> ) values.get( new Key( LISTING, repositoryPath, revision ) );
+    }
+
+    void putListing( String repositoryPath, long revision, List<String> listing ) {
+        values.put( new Key( LISTING, repositoryPath, revision ), listing );
+    }
+
+    /** Removes all cached values. */
+    void clear() {
+        values.clear();
+    }
+
+
+    /**
+     * The map that keeps its entries in the access order and removes the least recently used entry when it grows
+     * beyond the maximum size.
+     */
+    private static final class LruMap extends LinkedHashMap<Key, Object> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int maximumSize;
+
+
+        LruMap( int maximumSize ) {
+            super( 16, 0.75f, true );
+            this.maximumSize = maximumSize;
+        }
+
+
+        @Override
+        protected boolean removeEldestEntry( Map.Entry<Key, Object> eldest ) {
+            return size() > maximumSize;
+        }
+
+    }
+
+    private static final class Key {
+
+        private final int type;
+
+        private final String repositoryPath;
+
+        private final long revision;
+
+
+        Key( int type, String repositoryPath, long revision ) {
+            this.type = type;
+            this.repositoryPath = repositoryPath;
+            this.revision = revision;
+        }
+
+
+        @Override
+        public boolean equals( Object obj ) {
+            if ( this == obj ) {
+                return true;
+            }
+            if ( !( obj instanceof Key ) ) {
+                return false;
+            }
+            Key key = ( Key ) obj;
+            return type == key.type && revision == key.revision && repositoryPath.equals( key.repositoryPath );
+        }
+
+        @Override
+        public int hashCode() {
+            return ( 31 * type + repositoryPath.hashCode() ) * 31 + ( int ) ( revision ^ ( revision >>> 32 ) );
+        }
+
+    }
+
+}
@@ -0,0 +1,305 @@
+/*-
+ * Copyright (c) 2009-2011, Oleg Estekhin
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the distribution.
+ *  * Neither the names of the copyright holders nor the names of their
+ *    contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ * DAMAGE.
+ */
+
+package oe.maven.wagon.providers.svn;
+
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.tmatesoft.svn.core.SVNCommitInfo;
+import org.tmatesoft.svn.core.SVNDepth;
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.SVNNodeKind;
+import org.tmatesoft.svn.core.SVNProperty;
+import org.tmatesoft.svn.core.SVNPropertyValue;
+import org.tmatesoft.svn.core.internal.wc.SVNFileUtil;
+import org.tmatesoft.svn.core.io.ISVNEditor;
+import org.tmatesoft.svn.core.io.ISVNReporter;
+import org.tmatesoft.svn.core.io.ISVNReporterBaton;
+import org.tmatesoft.svn.core.io.SVNRepository;
+import org.tmatesoft.svn.core.io.diff.SVNDiffWindow;
+
+/**
+ * The snapshot of the structure of a remote directory tree.
+ * <p/>
+ * The snapshot is obtained with a single status report that describes the whole tree as missing, so the repository
+ * responds with the list of all nodes without sending their contents. The content checksums are recorded if the
+ * repository reports them.
+ */
+class RemoteTree {
+
+    /** The node kinds mapped by the paths relative to the tree root, the tree root itself is not included. */
+    private final Map<String, SVNNodeKind> nodeKinds = new HashMap<String, SVNNodeKind>();
+
+    /** The names of the child nodes mapped by the paths of their parent directories relative to the tree root. */
+    private final Map<String, List<String>> children = new HashMap<String, List<String>>();
+
+    /** The content checksums of the files mapped by the paths relative to the tree root. */
+    private final Map<String, String> checksums = new HashMap<String, String>();
+
+    /** The revisions in which the files were last changed mapped by the paths relative to the tree root. */
+    private final Map<String, Long> revisions = new HashMap<String, Long>();
+
+    /** Indicates whether the tree root exists. */
+    private boolean rootExists;
+
+
+    /**
+     * Creates a new snapshot of an empty tree.
+     *
+     * @param rootExists {@code true} if the tree root is an existing empty directory, {@code false} if the tree root
+     * does not exist
+     */
+    RemoteTree( boolean rootExists ) {
+        this.rootExists = rootExists;
+    }
+
+
+    /**
+     * Requests the snapshot of the directory tree at the current location of the specified repository.
+     *
+     * @param repository the repository located at the tree root
+     * @param revision the revision
+     *
+     * @return the tree snapshot
+     *
+     * @throws SVNException if an SVN error occurred
+     */
+    static RemoteTree fetch( SVNRepository repository, long revision ) throws SVNException {
+        final RemoteTree remoteTree = new RemoteTree( true );
+        report( repository, revision, new TreeEditor() {
+
+            @Override
+            void addNode( String path, SVNNodeKind nodeKind ) {
+                remoteTree.addNode( path, nodeKind );
+            }
+
+            @Override
+            public void changeFileProperty( String path, String propertyName, SVNPropertyValue propertyValue ) {
+                if ( SVNProperty.COMMITTED_REVISION.equals( propertyName ) && propertyValue != null ) {
+                    remoteTree.revisions.put( path, Long.valueOf( propertyValue.getString() ) );
+                }
+            }
+
+            @Override
+            public void closeFile( String path, String textChecksum ) {
+                if ( textChecksum != null ) {
+                    remoteTree.checksums.put( path, textChecksum );
+                }
+            }
+
+        } );
+        return remoteTree;
+    }
+
+    /**
+     * Reports all nodes of the directory tree at the current location of the specified repository to the specified
+     * editor, in the order parent directories first.
+     *
+     * @param repository the repository located at the tree root
+     * @param revision the revision
+     * @param editor the editor that receives the nodes
+     *
+     * @throws SVNException if an SVN error occurred
+     */
+    static void report( SVNRepository repository, final long revision, TreeEditor editor ) throws SVNException {
+        repository.status( revision, null, SVNDepth.INFINITY, new ISVNReporterBaton() {
+            public void report( ISVNReporter reporter ) throws SVNException {
+                reporter.setPath( "", null, revision, SVNDepth.INFINITY, true );
+                reporter.finishReport();
+            }
+        }, editor );
+    }
+
+
+    /**
+     * Returns the kind of the node at the specified path.
+     *
+     * @param path the path relative to the tree root
+     *
+     * @return the node kind, {@link SVNNodeKind#NONE} if the node does not exist
+     */
+    SVNNodeKind getNodeKind( String path ) {
+        if ( path.length() == 0 ) {
+            return rootExists ? SVNNodeKind.DIR : SVNNodeKind.NONE;
+        }
+        SVNNodeKind nodeKind = nodeKinds.get( path );
+        return nodeKind == null ? SVNNodeKind.NONE : nodeKind;
+    }
+
+    /**
+     * Returns the names of the child nodes of the specified directory.
+     *
+     * @param path the directory path relative to the tree root
+     *
+     * @return the names of the child nodes
+     */
+    List<String> getChildren( String path ) {
+        List<String> names = children.get( path );
+        return names == null ? Collections.<String>emptyList() : names;
+    }
+
+    /**
+     * Returns the content checksum of the file at the specified path.
+     *
+     * @param path the file path relative to the tree root
+     *
+     * @return the hex-encoded MD5 checksum, or {@code null} if the file does not exist or the checksum was not reported
+     */
+    String getChecksum( String path ) {
+        return checksums.get( path );
+    }
+
+    /**
+     * Returns the revision in which the file at the specified path was last changed.
+     *
+     * @param path the file path relative to the tree root
+     *
+     * @return the revision, or -1 if the file does not exist or the revision was not reported
+     */
+    long getRevision( String path ) {
+        Long revision = revisions.get( path );
+        return revision == null ? -1 : revision;
+    }
+
+
+    /**
+     * Records the node that was added to the tree after the snapshot was taken.
+     *
+     * @param path the node path relative to the tree root
+     * @param nodeKind the node kind
+     */
+    void addNode( String path, SVNNodeKind nodeKind ) {
+        if ( path.length() == 0 ) {
+            rootExists = true;
+            return;
+        }
+        nodeKinds.put( path, nodeKind );
+        int lastSlash = path.lastIndexOf( '/' );
+        String parentPath = lastSlash < 0 ? "" : path.substring( 0, lastSlash );
+        List<String> names = children.get( parentPath );
+        if ( names == null ) {
+            names = new ArrayList<String>();
+            children.put( parentPath, names );
+        }
+        names.add( path.substring( lastSlash + 1 ) );
+    }
+
+    /**
+     * Records the revision in which the file was changed after the snapshot was taken.
+     *
+     * @param path the file path relative to the tree root
+     * @param revision the revision
+     */
+    void setRevision( String path, long revision ) {
+        revisions.put( path, revision );
+    }
+
+
+    /**
+     * The editor that receives the nodes reported by the status report.
+     */
+    abstract static class TreeEditor implements ISVNEditor {
+
+        /**
+         * Handles the reported node.
+         *
+         * @param path the node path relative to the tree root
+         * @param nodeKind the node kind
+         *
+         * @throws SVNException if the node cannot be handled
+         */
+        abstract void addNode( String path, SVNNodeKind nodeKind ) throws SVNException;
+
+
+        public void targetRevision( long revision ) {
+        }
+
+        public void openRoot( long revision ) {
+        }
+
+        public void deleteEntry( String path, long revision ) {
+        }
+
+        public void absentDir( String path ) {
+        }
+
+        public void absentFile( String path ) {
+        }
+
+        public void addDir( String path, String copyFromPath, long copyFromRevision ) throws SVNException {
+            addNode( path, SVNNodeKind.DIR );
+        }
+
+        public void openDir( String path, long revision ) {
+        }
+
+        public void changeDirProperty( String name, SVNPropertyValue value ) {
+        }
+
+        public void closeDir() {
+        }
+
+        public void addFile( String path, String copyFromPath, long copyFromRevision ) throws SVNException {
+            addNode( path, SVNNodeKind.FILE );
+        }
+
+        public void openFile( String path, long revision ) {
+        }
+
+        public void changeFileProperty( String path, String propertyName, SVNPropertyValue propertyValue ) {
+        }
+
+        public void closeFile( String path, String textChecksum ) {
+        }
+
+        public SVNCommitInfo closeEdit() {
+            return null;
+        }
+
+        public void abortEdit() {
+        }
+
+        public void applyTextDelta( String path, String baseChecksum ) {
+        }
+
+        public OutputStream textDeltaChunk( String path, SVNDiffWindow diffWindow ) {
+            return SVNFileUtil.DUMMY_OUT;
+        }
+
+        public void textDeltaEnd( String path ) {
+        }
+
+    }
+
+}
@@ -0,0 +1,223 @@
+/*-
+ * Copyright (c) 2009-2011, Oleg Estekhin
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the distribution.
+ *  * Neither the names of the copyright holders nor the names of their
+ *    contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ * DAMAGE.
+ */
+
+package oe.maven.wagon.providers.svn;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileLock;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.SVNURL;
+
+/**
+ * The persistent cache of the repository roots mapped by the wagon repository URLs.
+ * <p/>
+ * The cache file can be shared by several processes, all modifications of the cache file are performed while holding
+ * the lock on the lock file. Every entry records the time when it was stored. The entries of the local repositories
+ * that no longer exist are removed when the cache is modified, and the oldest entries are removed when the cache
+ * grows beyond {@link #MAX_ENTRY_COUNT} entries.
+ */
+class RepositoryRootCache {
+
+    /** The maximum number of the cached repository roots. */
+    static final int MAX_ENTRY_COUNT = 256;
+
+
+    /** The cache file. */
+    private final File file;
+
+
+    /**
+     * Creates a new cache.
+     *
+     * @param file the cache file
+     */
+    RepositoryRootCache( File file ) {
+        this.file = file;
+    }
+
+
+    /**
+     * Returns the cached repository root for the specified wagon repository URL.
+     *
+     * @param url the wagon repository URL
+     *
+     * @return the repository root URL or {@code null} if the root is not cached
+     *
+     * @throws IOException if an I/O error occurred
+     */
+    String get( String url ) throws IOException {
+        String value = load().getProperty( url );
+        return value == null ? null : getRepositoryRoot( value );
+    }
+
+    /**
+     * Stores the repository root for the specified wagon repository URL.
+     *
+     * @param url the wagon repository URL
+     * @param repositoryRoot the repository root URL, or {@code null} to remove the cached root
+     *
+     * @throws IOException if an I/O error occurred
+     */
+    void put( String url, String repositoryRoot ) throws IOException {
+        synchronized ( RepositoryRootCache.class ) {
+            File directory = file.getAbsoluteFile().getParentFile();
+            if ( !directory.exists() && !directory.mkdirs() ) {
+                throw new IOException( "failed to create " + directory );
+            }
+            RandomAccessFile lockFile = new RandomAccessFile( new File( directory, file.getName() + ".lock" ), "rw" );
+            try {
+                FileLock lock = lockFile.getChannel().lock();
+                try {
+                    Properties roots = load();
+                    if ( repositoryRoot == null ) {
+                        if ( roots.remove( url ) == null ) {
+                            return;
+                        }
+                    } else {
+                        String value = roots.getProperty( url );
+                        if ( value != null && repositoryRoot.equals( getRepositoryRoot( value ) ) ) {
+                            return;
+                        }
+                        roots.setProperty( url, repositoryRoot + ' ' + System.currentTimeMillis() );
+                        prune( roots );
+                    }
+                    File tempFile = new File( directory, file.getName() + ".tmp" );
+                    OutputStream outputStream = new FileOutputStream( tempFile );
+                    try {
+                        roots.store( outputStream, null );
+                    } finally {
+                        outputStream.close();
+                    }
+                    if ( file.exists() && !file.delete() || !tempFile.renameTo( file ) ) {
+                        throw new IOException( "failed to store " + file );
+                    }
+                } finally {
+                    lock.release();
+                }
+            } finally {
+                lockFile.close();
+            }
+        }
+    }
+
+
+    /**
+     * Removes the entries of the local repositories that no longer exist and then the oldest entries if there are
+     * more than {@link #MAX_ENTRY_COUNT} entries.
+     *
+     * @param roots the cached repository roots
+     */
+    private static void prune( Properties roots ) {
+        for ( Iterator<Map.Entry<Object, Object>> iterator = roots.entrySet().iterator(); iterator.hasNext(); ) {
+            String value = ( String ) iterator.next().getValue();
+            if ( value.startsWith( "file:" ) ) {
+                try {
+                    SVNURL repositoryRoot = SVNURL.parseURIEncoded( getRepositoryRoot( value ) );
+                    if ( !new File( repositoryRoot.getPath() ).exists() ) {
+                        iterator.remove();
+                    }
+                } catch ( SVNException e ) {
+                    iterator.remove();
+                }
+            }
+        }
+        if ( roots.size() > MAX_ENTRY_COUNT ) {
+            List<Map.Entry<Object, Object>> entries = new ArrayList<Map.Entry<Object, Object>>( roots.entrySet() );
+            Collections.sort( entries, new Comparator<Map.Entry<Object, Object>>() {
+                public int compare( Map.Entry<Object, Object> first, Map.Entry<Object, Object> second ) {
+                    long firstTime = getStoreTime( ( String ) first.getValue() );
+                    long secondTime = getStoreTime( ( String ) second.getValue() );
+                    return firstTime < secondTime ? -1 : firstTime > secondTime ? 1 : 0;
+                }
+            } );
+            for ( int i = 0; i < entries.size() - MAX_ENTRY_COUNT; i++ ) {
+                roots.remove( entries.get( i ).getKey() );
+            }
+        }
+    }
+
+    /**
+     * Returns the repository root recorded in the specified entry value.
+     *
+     * @param value the entry value
+     *
+     * @return the repository root URL
+     */
+    private static String getRepositoryRoot( String value ) {
+        int separator = value.indexOf( ' ' );
+        return separator < 0 ? value : value.substring( 0, separator );
+    }
+
+    /**
+     * Returns the time when the specified entry value was stored.
+     *
+     * @param value the entry value
+     *
+     * @return the store time, or 0 if the value does not record it
+     */
+    private static long getStoreTime( String value ) {
+        int separator = value.indexOf( ' ' );
+        if ( separator < 0 ) {
+            return 0;
+        }
+        try {
+            return Long.parseLong( value.substring( separator + 1 ) );
+        } catch ( NumberFormatException e ) {
+            return 0;
+        }
+    }
+
+    private Properties load() throws IOException {
+        Properties roots = new Properties();
+        if ( file.exists() ) {
+            InputStream inputStream = new FileInputStream( file );
+            try {
+                roots.load( inputStream );
+            } finally {
+                inputStream.close();
+            }
+        }
+        return roots;
+    }
+
+}
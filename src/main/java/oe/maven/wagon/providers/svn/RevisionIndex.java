@@ -0,0 +1,267 @@
+/*-
+ * Copyright (c) 2009-2011, Oleg Estekhin
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the distribution.
+ *  * Neither the names of the copyright holders nor the names of their
+ *    contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ * DAMAGE.
+ */
+
+
+package oe.maven.wagon.providers.svn;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.nio.channels.FileLock;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.Properties;
+
+import org.tmatesoft.svn.core.SVNNodeKind;
+
+/**
+ * The persistent index of the node kinds and the last modification times of the paths of a repository directory tree.
+ * <p/>
+ * The index records the revision at which all its entries are known to be current. Before the index is used, the
+ * paths changed after that revision are found in the repository log and their entries are removed, so that the
+ * remaining entries can be used without requesting anything from the repository.
+ * <p/>
+ * The index file can be shared by several processes, all modifications of the index file are performed while holding
+ * the lock on the lock file. The entries recorded at the same revision by the other processes are merged, the entries
+ * of an older revision are replaced.
+ */
+class RevisionIndex {
+
+    private static final String REVISION_KEY = "revision";
+
+
+    /** The index file. */
+    private final File file;
+
+    /** The entries mapped by the paths relative to the Subversion repository root prefixed with a slash. */
+    private final Properties index = new Properties();
+
+    /** Indicates whether the index was changed since it was loaded or stored. */
+    private boolean modified;
+
+
+    /**
+     * Creates a new index.
+     *
+     * @param directory the directory of the index files
+     * @param repositoryUuid the repository UUID
+     * @param repositoryPath the path of the indexed tree relative to the Subversion repository root
+     */
+    RevisionIndex( File directory, String repositoryUuid, String repositoryPath ) {
+        String pathHash;
+        try {
+            pathHash = BaseContentStore.toHex( MessageDigest.getInstance( "MD5" ).digest( repositoryPath.getBytes( "UTF-8" ) ) );
+        } catch ( NoSuchAlgorithmException e ) {
+            throw new AssertionError( e );
+        } catch ( UnsupportedEncodingException e ) {
+            throw new AssertionError( e );
+        }
+        file = new File( directory, repositoryUuid + '-' + pathHash + ".properties" );
+    }
+
+
+    /**
+     * Loads the index file.
+     *
+     * @throws IOException if an I/O error occurred
+     */
+    synchronized void load() throws IOException {
+        index.clear();
+        loadInto( index );
+        modified = false;
+    }
+
+    /**
+     * Returns the revision at which the entries are current.
+     *
+     * @return the index revision, or -1 if the index is empty
+     */
+    synchronized long getRevision() {
+        String revision = index.getProperty( REVISION_KEY );
+        return revision == null ? -1 : Long.parseLong( revision );
+    }
+
+    /**
+     * Removes all entries and sets the revision at which the index is current.
+     *
+     * @param revision the index revision
+     */
+    synchronized void reset( long revision ) {
+        index.clear();
+        setRevision( revision );
+    }
+
+    /**
+     * Sets the revision at which the entries are current.
+     *
+     * @param revision the index revision
+     */
+    synchronized void setRevision( long revision ) {
+        index.setProperty( REVISION_KEY, Long.toString( revision ) );
+        modified = true;
+    }
+
+    /**
+     * Returns the recorded kind of the node at the specified path.
+     *
+     * @param repositoryPath the path relative to the Subversion repository root
+     *
+     * @return the node kind, or {@code null} if the path is not recorded
+     */
+    synchronized SVNNodeKind getNodeKind( String repositoryPath ) {
+        String value = index.getProperty( '/' + repositoryPath );
+        return value == null ? null : SVNNodeKind.parseKind( value.substring( 0, value.indexOf( ' ' ) ) );
+    }
+
+    /**
+     * Returns the recorded last modification time of the file at the specified path.
+     *
+     * @param repositoryPath the file path relative to the Subversion repository root
+     *
+     * @return the last modification time, or -1 if the path is not recorded or the time is unknown
+     */
+    synchronized long getLastModified( String repositoryPath ) {
+        String value = index.getProperty( '/' + repositoryPath );
+        return value == null ? -1 : Long.parseLong( value.substring( value.indexOf( ' ' ) + 1 ) );
+    }
+
+    /**
+     * Records the node kind of the specified path, keeping the recorded last modification time if the node kind is
+     * the same.
+     *
+     * @param repositoryPath the path relative to the Subversion repository root
+     * @param nodeKind the node kind
+     */
+    synchronized void putNodeKind( String repositoryPath, SVNNodeKind nodeKind ) {
+        if ( !nodeKind.equals( getNodeKind( repositoryPath ) ) ) {
+            putEntry( repositoryPath, nodeKind, -1 );
+        }
+    }
+
+    /**
+     * Records the node kind and the last modification time of the specified path.
+     *
+     * @param repositoryPath the path relative to the Subversion repository root
+     * @param nodeKind the node kind
+     * @param lastModified the last modification time, or -1 if unknown
+     */
+    synchronized void putEntry( String repositoryPath, SVNNodeKind nodeKind, long lastModified ) {
+        index.setProperty( '/' + repositoryPath, nodeKind.toString() + ' ' + lastModified );
+        modified = true;
+    }
+
+    /**
+     * Removes the entries of the specified path and of all paths below it.
+     *
+     * @param repositoryPath the path relative to the Subversion repository root
+     */
+    synchronized void invalidate( String repositoryPath ) {
+        String key = '/' + repositoryPath;
+        String prefix = repositoryPath.length() == 0 ? "/" : key + '/';
+        for ( Iterator<Object> iterator = index.keySet().iterator(); iterator.hasNext(); ) {
+            String path = ( String ) iterator.next();
+            if ( path.equals( key ) || path.startsWith( prefix ) ) {
+                iterator.remove();
+                modified = true;
+            }
+        }
+    }
+
+    /**
+     * Stores the index if it was changed, merging it with the entries stored by the other processes at the same
+     * revision. Nothing is stored if the index file was already updated to a newer revision.
+     *
+     * @throws IOException if an I/O error occurred
+     */
+    void store() throws IOException {
+        synchronized ( RevisionIndex.class ) {
+            File directory = file.getAbsoluteFile().getParentFile();
+            if ( !directory.exists() && !directory.mkdirs() ) {
+                throw new IOException( "failed to create " + directory );
+            }
+            RandomAccessFile lockFile = new RandomAccessFile( new File( directory, file.getName() + ".lock" ), "rw" );
+            try {
+                FileLock lock = lockFile.getChannel().lock();
+                try {
+                    synchronized ( this ) {
+                        if ( !modified ) {
+                            return;
+                        }
+                        Properties storedIndex = new Properties();
+                        loadInto( storedIndex );
+                        String storedRevision = storedIndex.getProperty( REVISION_KEY );
+                        long revision = getRevision();
+                        if ( storedRevision != null && Long.parseLong( storedRevision ) > revision ) {
+                            return;
+                        }
+                        if ( storedRevision != null && Long.parseLong( storedRevision ) == revision ) {
+                            storedIndex.putAll( index );
+                        } else {
+                            storedIndex = index;
+                        }
+                        File tempFile = new File( directory, file.getName() + ".tmp" );
+                        OutputStream outputStream = new FileOutputStream( tempFile );
+                        try {
+                            storedIndex.store( outputStream, null );
+                        } finally {
+                            outputStream.close();
+                        }
+                        if ( file.exists() && !file.delete() || !tempFile.renameTo( file ) ) {
+                            throw new IOException( "failed to store " + file );
+                        }
+                        modified = false;
+                    }
+                } finally {
+                    lock.release();
+                }
+            } finally {
+                lockFile.close();
+            }
+        }
+    }
+
+
+    private void loadInto( Properties properties ) throws IOException {
+        if ( file.exists() ) {
+            InputStream inputStream = new FileInputStream( file );
+            try {
+                properties.load( inputStream );
+            } finally {
+                inputStream.close();
+            }
+        }
+    }
+
+}
@@ -0,0 +1,410 @@
+/*-
+ * Copyright (c) 2009-2011, Oleg Estekhin
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the distribution.
+ *  * Neither the names of the copyright holders nor the names of their
+ *    contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ * DAMAGE.
+ */
+
+package oe.maven.wagon.providers.svn;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.maven.wagon.authentication.AuthenticationInfo;
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.SVNURL;
+import org.tmatesoft.svn.core.auth.ISVNAuthenticationManager;
+import org.tmatesoft.svn.core.internal.io.dav.DAVRepositoryFactory;
+import org.tmatesoft.svn.core.internal.io.fs.FSRepositoryFactory;
+import org.tmatesoft.svn.core.internal.io.svn.SVNRepositoryFactoryImpl;
+import org.tmatesoft.svn.core.io.SVNRepository;
+import org.tmatesoft.svn.core.io.SVNRepositoryFactory;
+import org.tmatesoft.svn.core.wc.SVNWCUtil;
+
+/**
+ * The process-wide pool of the authenticated repository sessions.
+ * <p/>
+ * The sessions are keyed by their location and the credentials used to open them, so the wagons created for the same
+ * repository and the same server configuration reuse the already established connections. The sessions that were idle
+ * for a while are checked before reuse, and the sessions that were idle for too long are closed. The pool also caches
+ * the repository root and the repository UUID of every resolved URL.
+ */
+class SVNRepositoryPool {
+
+    /** The idle time in milliseconds after which the session is checked before it is reused. */
+    private static final long HEALTH_CHECK_INTERVAL = 30 * 1000;
+
+    /** The idle time in milliseconds after which the session is closed. */
+    private static final long IDLE_TIMEOUT = 5 * 60 * 1000;
+
+    /** The maximum number of the idle sessions per key. */
+    private static final int MAXIMUM_IDLE_SESSIONS = 8;
+
+    private static final SVNRepositoryPool INSTANCE = new SVNRepositoryPool();
+
+    /** The protocols for which the repository factories were already registered. */
+    private static final Set<String> REGISTERED_PROTOCOLS = new HashSet<String>();
+
+
+    /** The idle sessions mapped by their keys, the most recently released sessions are at the end of the lists. */
+    private final Map<Key, LinkedList<IdleSession>> idleSessions = new HashMap<Key, LinkedList<IdleSession>>();
+
+    /** The sessions that are currently in use mapped to their keys. */
+    private final Map<SVNRepository, Key> leasedSessions = new IdentityHashMap<SVNRepository, Key>();
+
+    /** The repository roots mapped by the resolved URLs. */
+    private final Map<String, SVNURL> repositoryRoots = new HashMap<String, SVNURL>();
+
+    /** The repository UUIDs mapped by the repository roots. */
+    private final Map<String, String> repositoryUuids = new HashMap<String, String>();
+
+
+    /**
+     * Returns the process-wide pool instance.
+     *
+     * @return the pool
+     */
+    static SVNRepositoryPool getInstance() {
+        return INSTANCE;
+    }
+
+
+    /**
+     * Returns the session for the specified location and credentials.
+     * <p/>
+     * The idle session is reused if possible, otherwise a new session is created. The returned session must be either
+     * released or discarded after use.
+     *
+     * @param location the session location
+     * @param authenticationInfo the credentials, or {@code null} to use only the Subversion configuration
+     * @param metrics the metrics that record the health check of the idle session, or {@code null}
+     *
+     * @return the session
+     *
+     * @throws SVNException if an SVN error occurred
+     */
+    SVNRepository acquire( SVNURL location, AuthenticationInfo authenticationInfo, SVNWagonMetrics metrics ) throws SVNException {
+        Key key = new Key( location.toString(), authenticationInfo );
+        while ( true ) {
+            IdleSession idleSession;
+            long now = System.currentTimeMillis();
+            synchronized ( this ) {
+                evictIdleSessions( now );
+                LinkedList<IdleSession> sessions = idleSessions.get( key );
+                idleSession = sessions == null || sessions.isEmpty() ? null : sessions.removeLast();
+            }
+            if ( idleSession == null ) {
+                break;
+            }
+            if ( now - idleSession.releaseTime > HEALTH_CHECK_INTERVAL ) {
+                long startTime = System.nanoTime();
+                try {
+                    idleSession.repository.getLatestRevision();
+                } catch ( SVNException e ) {
+                    idleSession.repository.closeSession();
+                    continue;
+                } finally {
+                    if ( metrics != null ) {
+                        metrics.record( SVNWagonMetrics.Call.LATEST_REVISION, startTime );
+                    }
+                }
+            }
+            synchronized ( this ) {
+                leasedSessions.put( idleSession.repository, key );
+            }
+            return idleSession.repository;
+        }
+        setupRepositoryFactory( location.getProtocol() );
+        SVNRepository repository = SVNRepositoryFactory.create( location );
+        repository.setAuthenticationManager( createAuthenticationManager( authenticationInfo ) );
+        synchronized ( this ) {
+            leasedSessions.put( repository, key );
+        }
+        return repository;
+    }
+
+    /**
+     * Returns the session to the pool.
+     * <p/>
+     * The session is pooled under its current location, so the location may be changed while the session is in use.
+     *
+     * @param repository the session obtained from this pool
+     */
+    synchronized void release( SVNRepository repository ) {
+        Key key = leasedSessions.remove( repository );
+        if ( key == null ) {
+            repository.closeSession();
+            return;
+        }
+        key = key.withLocation( repository.getLocation().toString() );
+        LinkedList<IdleSession> sessions = idleSessions.get( key );
+        if ( sessions == null ) {
+            sessions = new LinkedList<IdleSession>();
+            idleSessions.put( key, sessions );
+        }
+        sessions.addLast( new IdleSession( repository, System.currentTimeMillis() ) );
+        if ( sessions.size() > MAXIMUM_IDLE_SESSIONS ) {
+            sessions.removeFirst().repository.closeSession();
+        }
+    }
+
+    /**
+     * Closes the session that may be in an inconsistent state instead of returning it to the pool.
+     *
+     * @param repository the session obtained from this pool
+     */
+    synchronized void discard( SVNRepository repository ) {
+        leasedSessions.remove( repository );
+        repository.closeSession();
+    }
+
+    /**
+     * Returns the already resolved root of the repository that contains the specified URL.
+     *
+     * @param url the URL inside the repository
+     *
+     * @return the repository root or {@code null} if the root was not resolved yet
+     */
+    synchronized SVNURL getCachedRepositoryRoot( SVNURL url ) {
+        return repositoryRoots.get( url.toString() );
+    }
+
+    /**
+     * Records the root of the repository that contains the specified URL, for example the root obtained from
+     * a persistent cache.
+     *
+     * @param url the URL inside the repository
+     * @param repositoryRoot the repository root
+     */
+    synchronized void putRepositoryRoot( SVNURL url, SVNURL repositoryRoot ) {
+        repositoryRoots.put( url.toString(), repositoryRoot );
+    }
+
+    /**
+     * Forgets the root of the repository that contains the specified URL, so that the next request resolves it again.
+     *
+     * @param url the URL inside the repository
+     */
+    synchronized void invalidateRepositoryRoot( SVNURL url ) {
+        SVNURL repositoryRoot = repositoryRoots.remove( url.toString() );
+        if ( repositoryRoot != null ) {
+            repositoryUuids.remove( repositoryRoot.toString() );
+        }
+    }
+
+    /**
+     * Returns the root of the repository that contains the specified URL.
+     * <p/>
+     * The root is requested from the repository only once per process.
+     *
+     * @param url the URL inside the repository
+     * @param authenticationInfo the credentials, or {@code null} to use only the Subversion configuration
+     * @param metrics the metrics that record the requests, or {@code null}
+     *
+     * @return the repository root
+     *
+     * @throws SVNException if an SVN error occurred
+     */
+    SVNURL getRepositoryRoot( SVNURL url, AuthenticationInfo authenticationInfo, SVNWagonMetrics metrics ) throws SVNException {
+        synchronized ( this ) {
+            SVNURL repositoryRoot = repositoryRoots.get( url.toString() );
+            if ( repositoryRoot != null ) {
+                return repositoryRoot;
+            }
+        }
+        SVNRepository repository = acquire( url, authenticationInfo, metrics );
+        SVNURL repositoryRoot;
+        String repositoryUuid;
+        try {
+            long startTime = System.nanoTime();
+            try {
+                repositoryRoot = repository.getRepositoryRoot( true );
+            } finally {
+                if ( metrics != null ) {
+                    metrics.record( SVNWagonMetrics.Call.REPOSITORY_ROOT, startTime );
+                }
+            }
+            // the UUID is received together with the root, so it is not requested again
+            repositoryUuid = repository.getRepositoryUUID( false );
+            repository.setLocation( repositoryRoot, false );
+        } catch ( SVNException e ) {
+            discard( repository );
+            throw e;
+        }
+        release( repository );
+        synchronized ( this ) {
+            repositoryRoots.put( url.toString(), repositoryRoot );
+            if ( repositoryUuid != null ) {
+                repositoryUuids.put( repositoryRoot.toString(), repositoryUuid );
+            }
+        }
+        return repositoryRoot;
+    }
+
+    /**
+     * Returns the UUID of the repository with the specified root.
+     *
+     * @param repositoryRoot the repository root
+     *
+     * @return the repository UUID, or {@code null} if the root was not resolved by this pool
+     */
+    synchronized String getRepositoryUUID( SVNURL repositoryRoot ) {
+        return repositoryUuids.get( repositoryRoot.toString() );
+    }
+
+
+    /**
+     * Returns the authentication manager that uses both the Subversion servers configuration and authentication storage
+     * and Maven servers configuration.
+     *
+     * @param authenticationInfo the credentials, or {@code null} to use only the Subversion configuration
+     *
+     * @return the authentication manager
+     */
+    static ISVNAuthenticationManager createAuthenticationManager( AuthenticationInfo authenticationInfo ) {
+        if ( authenticationInfo == null ) {
+            return SVNWCUtil.createDefaultAuthenticationManager();
+        } else {
+            return SVNWCUtil.createDefaultAuthenticationManager(
+                    null,
+                    authenticationInfo.getUserName(),
+                    authenticationInfo.getPassword(),
+                    authenticationInfo.getPrivateKey() == null ? null : new File( authenticationInfo.getPrivateKey() ),
+                    authenticationInfo.getPassphrase(),
+                    false );
+        }
+    }
+
+    /**
+     * Registers the repository factory for the specified protocol if it was not registered yet.
+     *
+     * @param protocol the URL protocol
+     */
+    private static void setupRepositoryFactory( String protocol ) {
+        synchronized ( REGISTERED_PROTOCOLS ) {
+            if ( REGISTERED_PROTOCOLS.add( protocol ) ) {
+                if ( "http".equals( protocol ) || "https".equals( protocol ) ) {
+                    DAVRepositoryFactory.setup();
+                } else if ( "svn".equals( protocol ) || protocol.startsWith( "svn+" ) ) {
+                    SVNRepositoryFactoryImpl.setup();
+                } else if ( "file".equals( protocol ) ) {
+                    FSRepositoryFactory.setup();
+                }
+            }
+        }
+    }
+
+    private void evictIdleSessions( long now ) {
+        for ( Iterator<LinkedList<IdleSession>> iterator = idleSessions.values().iterator(); iterator.hasNext(); ) {
+            LinkedList<IdleSession> sessions = iterator.next();
+            while ( !sessions.isEmpty() && now - sessions.getFirst().releaseTime > IDLE_TIMEOUT ) {
+                sessions.removeFirst().repository.closeSession();
+            }
+            if ( sessions.isEmpty() ) {
+                iterator.remove();
+            }
+        }
+    }
+
+
+    private static final class IdleSession {
+
+        private final SVNRepository repository;
+
+        private final long releaseTime;
+
+
+        IdleSession( SVNRepository repository, long releaseTime ) {
+            this.repository = repository;
+            this.releaseTime = releaseTime;
+        }
+
+    }
+
+    private static final class Key {
+
+        private final String location;
+
+        private final String userName;
+
+        private final String password;
+
+        private final String privateKey;
+
+        private final String passphrase;
+
+
+        Key( String location, AuthenticationInfo authenticationInfo ) {
+            this( location,
+                    authenticationInfo == null ? null : authenticationInfo.getUserName(),
+                    authenticationInfo == null ? null : authenticationInfo.getPassword(),
+                    authenticationInfo == null ? null : authenticationInfo.getPrivateKey(),
+                    authenticationInfo == null ? null : authenticationInfo.getPassphrase() );
+        }
+
+        private Key( String location, String userName, String password, String privateKey, String passphrase ) {
+            this.location = location;
+            this.userName = userName;
+            this.password = password;
+            this.privateKey = privateKey;
+            this.passphrase = passphrase;
+        }
+
+
+        Key withLocation( String location ) {
+            return new Key( location, userName, password, privateKey, passphrase );
+        }
+
+        @Override
+        public boolean equals( Object obj ) {
+            if ( this == obj ) {
+                return true;
+            }
+            if ( !( obj instanceof Key ) ) {
+                return false;
+            }
+            Key key = ( Key ) obj;
+            return location.equals( key.location ) && equal( userName, key.userName ) && equal( password, key.password )
+                    && equal( privateKey, key.privateKey ) && equal( passphrase, key.passphrase );
+        }
+
+        @Override
+        public int hashCode() {
+            return location.hashCode() * 31 + ( userName == null ? 0 : userName.hashCode() );
+        }
+
+        private static boolean equal( String s1, String s2 ) {
+            return s1 == null ? s2 == null : s1.equals( s2 );
+        }
+
+    }
+
+}
@@ -29,41 +29,70 @@
 
 package oe.maven.wagon.providers.svn;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
+import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 import org.apache.maven.wagon.AbstractWagon;
 import org.apache.maven.wagon.ConnectionException;
 import org.apache.maven.wagon.ResourceDoesNotExistException;
 import org.apache.maven.wagon.TransferFailedException;
+import org.apache.maven.wagon.WagonConstants;
 import org.apache.maven.wagon.authentication.AuthenticationException;
 import org.apache.maven.wagon.authorization.AuthorizationException;
 import org.apache.maven.wagon.events.TransferEvent;
 import org.apache.maven.wagon.resource.Resource;
+import org.tmatesoft.svn.core.ISVNDirEntryHandler;
 import org.tmatesoft.svn.core.SVNAuthenticationException;
+import org.tmatesoft.svn.core.SVNCommitInfo;
 import org.tmatesoft.svn.core.SVNDirEntry;
+import org.tmatesoft.svn.core.SVNErrorCode;
+import org.tmatesoft.svn.core.SVNErrorMessage;
+import org.tmatesoft.svn.core.ISVNLogEntryHandler;
 import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.SVNLogEntry;
+import org.tmatesoft.svn.core.SVNLogEntryPath;
 import org.tmatesoft.svn.core.SVNNodeKind;
+import org.tmatesoft.svn.core.SVNProperties;
 import org.tmatesoft.svn.core.SVNProperty;
 import org.tmatesoft.svn.core.SVNPropertyValue;
 import org.tmatesoft.svn.core.SVNURL;
-import org.tmatesoft.svn.core.auth.ISVNAuthenticationManager;
-import org.tmatesoft.svn.core.internal.io.dav.DAVRepositoryFactory;
-import org.tmatesoft.svn.core.internal.io.fs.FSRepositoryFactory;
-import org.tmatesoft.svn.core.internal.io.svn.SVNRepositoryFactoryImpl;
+import org.tmatesoft.svn.core.internal.util.SVNDate;
+import org.tmatesoft.svn.core.io.ISVNDeltaConsumer;
 import org.tmatesoft.svn.core.io.ISVNEditor;
 import org.tmatesoft.svn.core.io.SVNRepository;
-import org.tmatesoft.svn.core.io.SVNRepositoryFactory;
 import org.tmatesoft.svn.core.io.diff.SVNDeltaGenerator;
+import org.tmatesoft.svn.core.io.diff.SVNDiffWindow;
 import org.tmatesoft.svn.core.wc.ISVNOptions;
 import org.tmatesoft.svn.core.wc.SVNWCUtil;
 
@@ -74,14 +103,96 @@ import org.tmatesoft.svn.core.wc.SVNWCUtil;
  */
 public class SVNWagon extends AbstractWagon {
 
-    static {
-        DAVRepositoryFactory.setup(); // http, https
-        SVNRepositoryFactoryImpl.setup(); // svn, svn+xxx
-        FSRepositoryFactory.setup(); // file
-    }
+    /** The size of the buffer that holds the beginning of the downloaded content. */
+    private static final int GET_BUFFER_SIZE = 64 * 1024;
+
+    /** The size of the buffer used to read the uploaded content. */
+    private static final int PUT_BUFFER_SIZE = 64 * 1024;
+
+    /** The minimum size of the files uploaded through the delta pipeline, the smaller files fit in a few windows. */
+    private static final long PIPELINED_PUT_MIN_LENGTH = 1024 * 1024;
+
+    /** The error codes that indicate that the cached repository root may be no longer valid. */
+    private static final Set<SVNErrorCode> LAYOUT_ERROR_CODES = new HashSet<SVNErrorCode>( Arrays.asList(
+            SVNErrorCode.RA_ILLEGAL_URL,
+            SVNErrorCode.RA_DAV_RELOCATED,
+            SVNErrorCode.RA_SVN_REPOS_NOT_FOUND,
+            SVNErrorCode.RA_LOCAL_REPOS_NOT_FOUND,
+            SVNErrorCode.RA_LOCAL_REPOS_OPEN_FAILED ) );
+
+    /** The error codes that indicate that the commit conflicts with a concurrent commit. */
+    private static final Set<SVNErrorCode> CONFLICT_ERROR_CODES = new HashSet<SVNErrorCode>( Arrays.asList(
+            SVNErrorCode.FS_CONFLICT,
+            SVNErrorCode.FS_TXN_OUT_OF_DATE,
+            SVNErrorCode.FS_OUT_OF_DATE,
+            SVNErrorCode.RA_OUT_OF_DATE ) );
+
+    /** The source of the commit retry delay jitter. */
+    private static final Random RETRY_RANDOM = new Random();
+
+    /**
+     * The number of the files changed since the content index was updated above which the whole tree is indexed with
+     * a single status report instead of requesting every changed file.
+     */
+    private static final int CONTENT_INDEX_LOG_LIMIT = 100;
+
+
+    /** The directory of the base contents for delta uploads, or {@code null} if delta uploads are disabled. */
+    private File deltaBaseDirectory;
+
+    /** Indicates whether the read operations use the revision that was the latest at the connection time. */
+    private boolean pinnedReads;
+
+    /** The maximum number of the cached metadata values. */
+    private int metadataCacheSize = 1024;
+
+    /** The directory of the downloaded file cache, or {@code null} if the downloaded files are not cached. */
+    private File blobCacheDirectory;
+
+    /** The maximum total size of the downloaded file cache in bytes. */
+    private long blobCacheSize = 512L * 1024 * 1024;
+
+    /** The file that persists the resolved repository roots, or {@code null} if the roots are not persisted. */
+    private File rootCacheFile = new File( System.getProperty( "user.home" ), ".m2/maven-svn-wagon/repository-roots.properties" );
 
+    /** Indicates whether the directory uploads skip the files that are unchanged in the repository. */
+    private boolean incrementalDirectoryPut;
 
-    /** The Subversion repository root. */
+    /** Indicates whether the directory uploads delete the remote files and directories that are missing locally. */
+    private boolean prunedDirectoryPut;
+
+    /** The number of the written files after which the write session is committed, or 0 if unlimited. */
+    private int commitFileLimit;
+
+    /** The number of the written bytes after which the write session is committed, or 0 if unlimited. */
+    private long commitSizeLimit;
+
+    /** The maximum number of the concurrent read sessions used to prefetch files. */
+    private int prefetchSessions = 4;
+
+    /** The maximum number of the commit retries after conflicts with concurrent commits. */
+    private int commitRetryCount = 3;
+
+    /** The base delay before the first commit retry in milliseconds. */
+    private long commitRetryDelay = 1000L;
+
+    /** Indicates whether the put operations return before the content is sent to the repository. */
+    private boolean writeBehind;
+
+    /** The directory of the content indexes, or {@code null} if the uploaded contents are not deduplicated. */
+    private File dedupIndexDirectory;
+
+    /** The directory of the revision indexes, or {@code null} if the checked paths are not persisted. */
+    private File revisionIndexDirectory;
+
+    /** Indicates whether the large files are read, delta-encoded and sent concurrently. */
+    private boolean pipelinedPut;
+
+
+    /** The requested wagon repository URL without the wagon protocol prefix. */
+    private SVNURL wagonRepositoryUrl;
+
+    /** The Subversion repository root, or {@code null} if the root was not resolved yet. */
     private SVNURL svnRepositoryRoot;
 
     /** The path of the requested wagon repository relative to the Subversion repository root. */
@@ -91,6 +202,40 @@ public class SVNWagon extends AbstractWagon {
     /** The repository for read operations. */
     private SVNRepository readRepository;
 
+    /** The revision for read operations, or -1 if the read operations use the latest revision. */
+    private long readRevision;
+
+    /**
+     * The metadata that was already requested during the current connection.
+     * <p/>
+     * Only the node kinds are cached unless the read revision is pinned.
+     */
+    private MetadataCache metadataCache;
+
+    /** The store of the base contents for delta uploads. */
+    private BaseContentStore baseContentStore;
+
+    /** The cache of the downloaded files. */
+    private BlobCache blobCache;
+
+    /** The index of the contents of the wagon repository, or {@code null} if the index was not updated yet. */
+    private ContentIndex contentIndex;
+
+    /** The index of the checked paths of the wagon repository, or {@code null} if the index was not updated yet. */
+    private RevisionIndex revisionIndex;
+
+    /** The metrics of the current connection. */
+    private SVNWagonMetrics metrics;
+
+    /** The repositories for prefetch operations. */
+    private List<SVNRepository> prefetchRepositories;
+
+    /** The directory of the prefetched contents. */
+    private File prefetchDirectory;
+
+    /** The prefetched files that were not requested yet mapped by their repository paths. */
+    private Map<String, PrefetchedFile> prefetchedFiles;
+
 
     /** The repository for write operations. */
     private SVNRepository writeRepository;
@@ -98,332 +243,2066 @@ public class SVNWagon extends AbstractWagon {
     /** The editor for write operations. */
     private ISVNEditor writeEditor;
 
+    /** The paths of the directories that are currently open in the editor, excluding the root directory. */
+    private List<String> openDirectories;
+
     /** The Subversion options used for write operations. */
     private ISVNOptions writeOptions;
 
+    /** The commit log message of the current write session. */
+    private String writeMessage;
+
+    /** The number of the files written during the current write session. */
+    private int writtenFileCount;
+
+    /** The number of the bytes written during the current write session. */
+    private long writtenByteCount;
+
+    /**
+     * The latest revision when the current write session was started, or -1 if the commits are not retried. The
+     * write session is replayed only if no later commit changed its written paths.
+     */
+    private long writeBaseRevision;
+
     /** Indicates whether some write operation was actually attempted. */
     private boolean writeAttempted;
 
     /** Indicates whether all attempted write operation were successful. */
     private boolean writeSuccessful;
 
-    /** The set of repository paths that were added during the current write session. */
-    private Set<String> addedEntries;
+    /** The repository paths that were added during the current write session mapped to their node kinds. */
+    private Map<String, SVNNodeKind> addedEntries;
 
+    /** The repository paths of the existing entries that were changed or deleted during the current write session. */
+    private Set<String> changedEntries;
 
-    @Override
-    protected void openConnectionInternal() throws ConnectionException, AuthenticationException {
-        String wagonRepositoryUrl = repository.getUrl();
-        if ( !wagonRepositoryUrl.startsWith( "svn:" ) ) {
-            throw new AssertionError( "unexpected wagon protocol: " + wagonRepositoryUrl );
-        }
-        try {
-            SVNURL wagonRepositoryRoot = SVNURL.parseURIDecoded( wagonRepositoryUrl.substring( "svn:".length() ) );
-            SVNRepository svnRepository = SVNRepositoryFactory.create( wagonRepositoryRoot );
-            svnRepository.setAuthenticationManager( createAuthenticationManager() );
-            svnRepositoryRoot = svnRepository.getRepositoryRoot( true );
-            svnRepository.closeSession();
-            wagonRepositoryPath = wagonRepositoryRoot.getPath().substring( svnRepositoryRoot.getPath().length() );
-            if ( wagonRepositoryPath.startsWith( "/" ) ) {
-                wagonRepositoryPath = wagonRepositoryPath.substring( 1 );
-            }
-            if ( wagonRepositoryPath.endsWith( "/" ) ) {
-                wagonRepositoryPath = wagonRepositoryPath.substring( 0, wagonRepositoryPath.length() - 1 );
-            }
-        } catch ( SVNAuthenticationException e ) {
-            throw new AuthenticationException( e.getMessage(), e );
-        } catch ( SVNException e ) {
-            throw new ConnectionException( e.getMessage(), e );
-        }
-    }
+    /** Indicates whether some entries were deleted during the current write session. */
+    private boolean entriesDeleted;
 
-    @Override
-    protected void closeConnection() throws ConnectionException {
-        svnRepositoryRoot = null;
-        wagonRepositoryPath = null;
-        try {
-            commitWriteSession();
-        } catch ( SVNException e ) {
-            throw new ConnectionException( e.getMessage(), e );
-        } finally {
-            if ( writeRepository != null ) {
-                writeRepository.closeSession();
-                writeRepository = null;
-            }
-            if ( readRepository != null ) {
-                readRepository.closeSession();
-                readRepository = null;
-            }
-        }
-    }
+    /** The write operations of the current write session in the order they were performed. */
+    private List<WriteOperation> writeJournal;
 
+    /**
+     * The directory of the copies of the files written during the current write session that the session is replayed
+     * from, or {@code null} if no file was copied yet.
+     */
+    private File writeJournalDirectory;
 
-    @Override
-    public boolean resourceExists( String repositoryResourceName ) throws TransferFailedException, AuthorizationException {
-        String repositoryResourcePath = getResourcePath( repositoryResourceName );
-        try {
-            // hack for http://code.google.com/p/maven-svn-wagon/issues/detail?id=7
-            SVNNodeKind expectedResourceKind = repositoryResourceName.endsWith( "/" ) ? SVNNodeKind.DIR : SVNNodeKind.FILE;
-            SVNNodeKind repositoryResourceKind = getReadRepository().checkPath( repositoryResourcePath, -1 );
-            return expectedResourceKind.equals( repositoryResourceKind );
-        } catch ( SVNAuthenticationException e ) {
-            throw new AuthorizationException( e.getMessage(), e );
-        } catch ( SVNException e ) {
-            throw new TransferFailedException( e.getMessage(), e );
-        }
-    }
+    /** The last put operations of the current write session mapped by the written repository paths. */
+    private Map<String, WriteOperation> stagedFiles;
 
+    /** The repository paths of the directories that were copied during the current write session. */
+    private Set<String> copiedDirectories;
 
-    public void get( String repositoryResourceName, File localFile ) throws TransferFailedException, ResourceDoesNotExistException, AuthorizationException {
-        String repositoryResourcePath = getResourcePath( repositoryResourceName );
-        try {
-            if ( addedEntries != null && addedEntries.contains( repositoryResourcePath ) ) {
-                commitWriteSession();
-            }
-            SVNNodeKind repositoryResourceKind = getReadRepository().checkPath( repositoryResourcePath, -1 );
-            if ( SVNNodeKind.FILE.equals( repositoryResourceKind ) ) {
-                getInternal( repositoryResourcePath, localFile, new Resource( repositoryResourceName ) );
-            } else if ( SVNNodeKind.NONE.equals( repositoryResourceKind ) ) {
-                throw new ResourceDoesNotExistException( repositoryResourceName + " does not exist" );
-            } else {
-                throw new ResourceDoesNotExistException( repositoryResourceName + " is not a file" );
-            }
-        } catch ( FileNotFoundException e ) {
-            throw new TransferFailedException( e.getMessage(), e );
-        } catch ( SVNAuthenticationException e ) {
-            throw new AuthorizationException( e.getMessage(), e );
-        } catch ( SVNException e ) {
-            throw new TransferFailedException( e.getMessage(), e );
-        }
-    }
+    /** Indicates whether the write operations of the current write session are being replayed. */
+    private boolean replayingWriteSession;
 
-    public boolean getIfNewer( String repositoryResourceName, File localFile, long timestamp ) throws TransferFailedException, ResourceDoesNotExistException, AuthorizationException {
-        String repositoryResourcePath = getResourcePath( repositoryResourceName );
-        try {
-            if ( addedEntries != null && addedEntries.contains( repositoryResourcePath ) ) {
-                commitWriteSession();
-            }
-            SVNDirEntry repositoryResourceEntry = getReadRepository().info( repositoryResourcePath, -1 );
-            if ( repositoryResourceEntry == null ) {
-                throw new ResourceDoesNotExistException( repositoryResourceName + " does not exist" );
-            } else if ( SVNNodeKind.FILE.equals( repositoryResourceEntry.getKind() ) ) {
-                if ( repositoryResourceEntry.getDate().getTime() <= timestamp ) {
-                    fireGetInitiated( new Resource( repositoryResourceName ), localFile ); // expected by the org.apache.maven.wagon.WagonTestCase
-                    return false;
-                } else {
-                    getInternal( repositoryResourcePath, localFile, new Resource( repositoryResourceName ) );
-                    return true;
-                }
-            } else {
-                throw new ResourceDoesNotExistException( repositoryResourceName + " is not a file" );
-            }
-        } catch ( FileNotFoundException e ) {
-            throw new TransferFailedException( e.getMessage(), e );
-        } catch ( SVNAuthenticationException e ) {
-            throw new AuthorizationException( e.getMessage(), e );
-        } catch ( SVNException e ) {
-            throw new TransferFailedException( e.getMessage(), e );
-        }
-    }
+    /** Indicates whether the transfer listeners are not notified about the files sent to the repository. */
+    private boolean putEventsSuppressed;
 
+    /** The executor that sends the spooled files to the repository in the write-behind mode. */
+    private ExecutorService writeBehindExecutor;
 
-    public void put( File localFile, String repositoryResourceName ) throws TransferFailedException, AuthorizationException {
-        if ( repositoryResourceName.endsWith( ".asc.md5" ) || repositoryResourceName.endsWith( ".asc.sha1" ) ) {
-            // HACK: unnecessary artifacts of maven-gpg-plugin and maven-deploy-plugin combination
-            return;
-        }
-        String repositoryResourcePath = getResourcePath( repositoryResourceName );
-        try {
-            ISVNEditor editor = getWriteEditor( repositoryResourcePath );
-            String[] pathComponents = repositoryResourcePath.split( "/" );
-            openDirectoriesInternal( editor, pathComponents, 0, pathComponents.length - 1 );
-            putFileInternal( localFile, repositoryResourcePath, new Resource( repositoryResourceName ) );
-            closeDirectoriesInternal( editor, pathComponents.length - 1 );
-        } catch ( FileNotFoundException e ) {
-            writeSuccessful = false;
-            throw new TransferFailedException( e.getMessage(), e );
-        } catch ( SVNAuthenticationException e ) {
-            writeSuccessful = false;
-            throw new AuthorizationException( e.getMessage(), e );
-        } catch ( SVNException e ) {
-            writeSuccessful = false;
-            throw new TransferFailedException( e.getMessage(), e );
-        } catch ( TransferFailedException e ) {
-            writeSuccessful = false;
-            throw e;
-        }
-    }
+    /** The pipeline that uploads the large files, or {@code null} if no such file was uploaded yet. */
+    private DeltaPipeline deltaPipeline;
 
+    /** The executor of the delta pipeline stages. */
+    private ExecutorService deltaPipelineExecutor;
 
-    @Override
-    public boolean supportsDirectoryCopy() {
-        return true;
-    }
+    /** The directory of the spooled files. */
+    private File writeBehindDirectory;
 
-    @Override
-    public void putDirectory( File localDirectory, String repositoryDirectoryName ) throws TransferFailedException, AuthorizationException {
-        String repositoryDirectoryPath = getResourcePath( repositoryDirectoryName );
-        try {
-            ISVNEditor editor = getWriteEditor( repositoryDirectoryPath );
-            String[] pathComponents = repositoryDirectoryPath.split( "/" );
-            openDirectoriesInternal( editor, pathComponents, 0, pathComponents.length - 1 );
-            putDirectoryInternal( localDirectory, repositoryDirectoryPath, new Resource( repositoryDirectoryName ) );
-            closeDirectoriesInternal( editor, pathComponents.length - 1 );
-        } catch ( FileNotFoundException e ) {
-            writeSuccessful = false;
-            throw new TransferFailedException( e.getMessage(), e );
-        } catch ( SVNAuthenticationException e ) {
-            writeSuccessful = false;
-            throw new AuthorizationException( e.getMessage(), e );
-        } catch ( SVNException e ) {
-            writeSuccessful = false;
-            throw new TransferFailedException( e.getMessage(), e );
-        } catch ( TransferFailedException e ) {
-            writeSuccessful = false;
-            throw e;
-        }
-    }
+    /** The last submitted write-behind task, or {@code null} if all tasks are known to be completed. */
+    private Future<?> writeBehindTask;
 
+    /** The first failure of the write-behind tasks, or {@code null}. */
+    private volatile Exception writeBehindFailure;
 
-    @Override
-    public List<String> getFileList( String repositoryDirectoryName ) throws TransferFailedException, ResourceDoesNotExistException, AuthorizationException {
-        String repositoryDirectoryPath = getResourcePath( repositoryDirectoryName );
-        try {
-            SVNNodeKind repositoryDirectoryKind = getReadRepository().checkPath( repositoryDirectoryPath, -1 );
-            if ( SVNNodeKind.DIR.equals( repositoryDirectoryKind ) ) {
-                @SuppressWarnings( "unchecked" )
-                Collection<SVNDirEntry> repositoryDirectoryEntries = getReadRepository().getDir( repositoryDirectoryPath, -1, null, ( Collection<SVNDirEntry> ) null );
-                List<String> list = new ArrayList<String>();
-                for ( SVNDirEntry entry : repositoryDirectoryEntries ) {
-                    if ( SVNNodeKind.DIR.equals( entry.getKind() ) ) {
-                        list.add( entry.getRelativePath() + '/' );
-                    } else {
-                        list.add( entry.getRelativePath() );
-                    }
-                }
-                return list;
-            } else if ( SVNNodeKind.NONE.equals( repositoryDirectoryKind ) ) {
-                throw new ResourceDoesNotExistException( repositoryDirectoryName + " does not exist" );
-            } else {
-                throw new ResourceDoesNotExistException( repositoryDirectoryName + " is not a directory" );
-            }
-        } catch ( SVNAuthenticationException e ) {
-            throw new AuthorizationException( e.getMessage(), e );
-        } catch ( SVNException e ) {
-            throw new TransferFailedException( e.getMessage(), e );
-        }
-    }
+    /** The name of the resource whose put caused the first write-behind failure, or {@code null}. */
+    private volatile String writeBehindFailedResourceName;
+
+    /** The thread that runs the write-behind tasks, or {@code null} if no task was submitted yet. */
+    private volatile Thread writeBehindThread;
+
+    /**
+     * The listener notifications raised by the write-behind tasks, which are delivered by the thread that checks the
+     * tasks because the listeners are not required to be thread-safe.
+     */
+    private final Queue<Runnable> writeBehindNotifications = new ConcurrentLinkedQueue<Runnable>();
+
+    /** The path of the directory tree that is being written by {@link #putDirectory}, relative to the repository root. */
+    private String remoteTreePath;
+
+    /** The snapshot of the directory tree that is being written by {@link #putDirectory}. */
+    private RemoteTree remoteTree;
 
 
     /**
-     * Returns the authentication manager that uses both the Subversion servers configuration and authentication storage
-     * and Maven servers configuration.
+     * Returns the directory of the base contents for delta uploads.
      *
-     * @return the authentication manager
+     * @return the delta base directory or {@code null} if delta uploads are disabled
      */
-    private ISVNAuthenticationManager createAuthenticationManager() {
-        if ( authenticationInfo == null ) {
-            return SVNWCUtil.createDefaultAuthenticationManager();
-        } else {
-            return SVNWCUtil.createDefaultAuthenticationManager(
-                    null,
-                    authenticationInfo.getUserName(),
-                    authenticationInfo.getPassword(),
-                    authenticationInfo.getPrivateKey() == null ? null : new File( authenticationInfo.getPrivateKey() ),
-                    authenticationInfo.getPassphrase(),
-                    false );
-        }
+    public File getDeltaBaseDirectory() {
+        return deltaBaseDirectory;
     }
 
     /**
-     * Returns the repository for read operations.
+     * Sets the directory of the base contents for delta uploads.
      * <p/>
-     * This method lazily creates the read repository if needed.
-     *
-     * @return the repository for read operations
+     * When this directory is specified the content of every downloaded file is stored there and the subsequent upload
+     * of the same file sends only the difference between the stored and the new content.
      *
-     * @throws SVNException if an SVN error occurred
+     * @param deltaBaseDirectory the delta base directory or {@code null} to disable delta uploads
      */
-    private SVNRepository getReadRepository() throws SVNException {
-        if ( readRepository == null ) {
-            readRepository = SVNRepositoryFactory.create( svnRepositoryRoot );
-            readRepository.setAuthenticationManager( createAuthenticationManager() );
-        }
-        return readRepository;
+    public void setDeltaBaseDirectory( File deltaBaseDirectory ) {
+        this.deltaBaseDirectory = deltaBaseDirectory;
     }
 
     /**
-     * Returns the repository for write operations.
-     * <p/>
-     * This method lazily creates the write repository if needed.
-     *
-     * @return the repository for write operations
+     * Checks whether the read operations use the revision that was the latest at the connection time.
      *
-     * @throws SVNException if an SVN error occurred
+     * @return {@code true} if the read revision is pinned
      */
-    private SVNRepository getWriteRepository() throws SVNException {
-        if ( writeRepository == null ) {
-            writeRepository = SVNRepositoryFactory.create( svnRepositoryRoot );
-            writeRepository.setAuthenticationManager( createAuthenticationManager() );
-        }
-        return writeRepository;
+    public boolean isPinnedReads() {
+        return pinnedReads;
     }
 
     /**
-     * Returns the editor for write operations.
+     * Sets whether the read operations use the revision that was the latest at the connection time.
      * <p/>
-     * This method lazily creates the editor and supporting objects if needed.
-     *
-     * @param message the commit log message
-     *
-     * @return the editor for write operations
+     * When the read revision is pinned, the entries, the node kinds and the directory listings are cached, and the
+     * read revision is advanced to the revision created by the commit of the write session.
      *
-     * @throws SVNException if an SVN error occurred
+     * @param pinnedReads {@code true} to pin the read revision
      */
-    private ISVNEditor getWriteEditor( String message ) throws SVNException {
-        if ( writeEditor == null ) {
-            writeAttempted = false;
-            writeSuccessful = true;
-            writeEditor = getWriteRepository().getCommitEditor( "[maven-svn-wagon] " + message, null, false, null, null );
-            writeEditor.openRoot( -1 );
-            writeOptions = SVNWCUtil.createDefaultOptions( true );
-            addedEntries = new HashSet<String>();
-        }
-        return writeEditor;
+    public void setPinnedReads( boolean pinnedReads ) {
+        this.pinnedReads = pinnedReads;
     }
 
     /**
-     * Commits the current write session.
+     * Returns the maximum number of the cached metadata values.
      *
-     * @throws SVNException if an SVN error occurred
+     * @return the maximum size of the metadata cache
      */
-    private void commitWriteSession() throws SVNException {
-        if ( writeEditor != null ) {
-            try {
-                if ( writeAttempted && writeSuccessful ) {
-                    writeEditor.closeDir();
-                    writeEditor.closeEdit();
-                } else {
-                    writeEditor.abortEdit();
-                }
-            } finally {
-                writeEditor = null;
-                writeOptions = null;
-                addedEntries = null;
-            }
-        }
+    public int getMetadataCacheSize() {
+        return metadataCacheSize;
     }
 
+    /**
+     * Sets the maximum number of the cached metadata values.
+     *
+     * @param metadataCacheSize the maximum size of the metadata cache
+     */
+    public void setMetadataCacheSize( int metadataCacheSize ) {
+        this.metadataCacheSize = metadataCacheSize;
+    }
 
     /**
-     * Converts the wagon resource name to the Subversion repository path.
+     * Returns the directory of the downloaded file cache.
      *
-     * @param repositoryResourceName the resource name relative to the wagon repository root
+     * @return the downloaded file cache directory or {@code null} if the downloaded files are not cached
+     */
+    public File getBlobCacheDirectory() {
+        return blobCacheDirectory;
+    }
+
+    /**
+     * Sets the directory of the downloaded file cache.
+     * <p/>
+     * When this directory is specified the downloaded files are stored there under their checksums, and the
+     * subsequent downloads of the same file revision are served from the cache if the read revision is pinned. The
+     * cache directory can be shared by several concurrently running processes.
      *
-     * @return the resource name relative to the Subversion repository root
+     * @param blobCacheDirectory the downloaded file cache directory or {@code null} to disable the cache
      */
-    private String getResourcePath( String repositoryResourceName ) {
-        if ( ".".equals( repositoryResourceName ) ) {
+    public void setBlobCacheDirectory( File blobCacheDirectory ) {
+        this.blobCacheDirectory = blobCacheDirectory;
+    }
+
+    /**
+     * Returns the maximum total size of the downloaded file cache.
+     *
+     * @return the maximum size of the downloaded file cache in bytes
+     */
+    public long getBlobCacheSize() {
+        return blobCacheSize;
+    }
+
+    /**
+     * Sets the maximum total size of the downloaded file cache.
+     * <p/>
+     * The least recently used files are evicted from the cache when it becomes bigger.
+     *
+     * @param blobCacheSize the maximum size of the downloaded file cache in bytes
+     */
+    public void setBlobCacheSize( long blobCacheSize ) {
+        this.blobCacheSize = blobCacheSize;
+    }
+
+    /**
+     * Returns the file that persists the resolved repository roots.
+     *
+     * @return the repository root cache file or {@code null} if the repository roots are not persisted
+     */
+    public File getRootCacheFile() {
+        return rootCacheFile;
+    }
+
+    /**
+     * Sets the file that persists the resolved repository roots.
+     * <p/>
+     * When this file is specified the repository root of every wagon repository URL is requested from the repository
+     * only once, and the cached root is forgotten if some operation fails in the way that suggests that the repository
+     * layout has changed. The roots of the deleted local repositories and the oldest roots beyond a fixed number of
+     * entries are removed from the file.
+     *
+     * @param rootCacheFile the repository root cache file or {@code null} to resolve the roots on every connection
+     */
+    public void setRootCacheFile( File rootCacheFile ) {
+        this.rootCacheFile = rootCacheFile;
+    }
+
+    /**
+     * Checks whether the directory uploads skip the files that are unchanged in the repository.
+     *
+     * @return {@code true} if the directory uploads are incremental
+     */
+    public boolean isIncrementalDirectoryPut() {
+        return incrementalDirectoryPut;
+    }
+
+    /**
+     * Sets whether the directory uploads skip the files that are unchanged in the repository.
+     * <p/>
+     * When enabled the MD5 checksum of every uploaded local file is compared with the checksum reported by
+     * the repository for the existing file, and the file is not sent if the checksums are equal.
+     *
+     * @param incrementalDirectoryPut {@code true} to make the directory uploads incremental
+     */
+    public void setIncrementalDirectoryPut( boolean incrementalDirectoryPut ) {
+        this.incrementalDirectoryPut = incrementalDirectoryPut;
+    }
+
+    /**
+     * Checks whether the directory uploads delete the remote files and directories that are missing locally.
+     *
+     * @return {@code true} if the directory uploads delete the stale remote entries
+     */
+    public boolean isPrunedDirectoryPut() {
+        return prunedDirectoryPut;
+    }
+
+    /**
+     * Sets whether the directory uploads delete the remote files and directories that are missing locally.
+     * <p/>
+     * The deletions are committed together with the uploaded files.
+     *
+     * @param prunedDirectoryPut {@code true} to delete the stale remote entries
+     */
+    public void setPrunedDirectoryPut( boolean prunedDirectoryPut ) {
+        this.prunedDirectoryPut = prunedDirectoryPut;
+    }
+
+    /**
+     * Returns the number of the written files after which the write session is committed.
+     *
+     * @return the file limit of a single commit, or 0 if unlimited
+     */
+    public int getCommitFileLimit() {
+        return commitFileLimit;
+    }
+
+    /**
+     * Sets the number of the written files after which the write session is committed.
+     * <p/>
+     * When the limit is reached the current commit is completed at the next directory boundary, and the following
+     * files are written in a new commit with the same message.
+     *
+     * @param commitFileLimit the file limit of a single commit, or 0 if unlimited
+     */
+    public void setCommitFileLimit( int commitFileLimit ) {
+        this.commitFileLimit = commitFileLimit;
+    }
+
+    /**
+     * Returns the number of the written bytes after which the write session is committed.
+     *
+     * @return the size limit of a single commit in bytes, or 0 if unlimited
+     */
+    public long getCommitSizeLimit() {
+        return commitSizeLimit;
+    }
+
+    /**
+     * Sets the number of the written bytes after which the write session is committed.
+     * <p/>
+     * When the limit is reached the current commit is completed at the next directory boundary, and the following
+     * files are written in a new commit with the same message.
+     *
+     * @param commitSizeLimit the size limit of a single commit in bytes, or 0 if unlimited
+     */
+    public void setCommitSizeLimit( long commitSizeLimit ) {
+        this.commitSizeLimit = commitSizeLimit;
+    }
+
+    /**
+     * Returns the maximum number of the concurrent read sessions used to prefetch files.
+     *
+     * @return the maximum number of prefetch sessions
+     */
+    public int getPrefetchSessions() {
+        return prefetchSessions;
+    }
+
+    /**
+     * Sets the maximum number of the concurrent read sessions used to prefetch files.
+     *
+     * @param prefetchSessions the maximum number of prefetch sessions
+     */
+    public void setPrefetchSessions( int prefetchSessions ) {
+        this.prefetchSessions = prefetchSessions;
+    }
+
+    /**
+     * Returns the maximum number of the commit retries after conflicts with concurrent commits.
+     *
+     * @return the maximum number of the commit retries
+     */
+    public int getCommitRetryCount() {
+        return commitRetryCount;
+    }
+
+    /**
+     * Sets the maximum number of the commit retries after conflicts with concurrent commits.
+     * <p/>
+     * If the commit fails because it conflicts with a concurrent commit that did not change any of the written paths,
+     * for example a commit that added other files to the same new directory, then the write operations of the failed
+     * commit are replayed against the latest revision and the commit is retried. If some written path was changed
+     * then the commit fails, so that the concurrent change is not overwritten. The value of 0 disables the retries.
+     *
+     * @param commitRetryCount the maximum number of the commit retries
+     */
+    public void setCommitRetryCount( int commitRetryCount ) {
+        this.commitRetryCount = commitRetryCount;
+    }
+
+    /**
+     * Returns the base delay before the first commit retry.
+     *
+     * @return the base delay in milliseconds
+     */
+    public long getCommitRetryDelay() {
+        return commitRetryDelay;
+    }
+
+    /**
+     * Sets the base delay before the first commit retry.
+     * <p/>
+     * The delay doubles with every subsequent retry, and every delay is randomized by up to a half of its value in
+     * both directions so that the conflicting deployers do not retry in lockstep.
+     *
+     * @param commitRetryDelay the base delay in milliseconds
+     */
+    public void setCommitRetryDelay( long commitRetryDelay ) {
+        this.commitRetryDelay = commitRetryDelay;
+    }
+
+    /**
+     * Checks whether the put operations return before the content is sent to the repository.
+     *
+     * @return {@code true} if the write-behind mode is enabled
+     */
+    public boolean isWriteBehind() {
+        return writeBehind;
+    }
+
+    /**
+     * Sets whether the put operations return before the content is sent to the repository.
+     * <p/>
+     * In the write-behind mode the {@link #put} operation copies the file into a local staging directory, notifying the
+     * transfer listeners, and returns. The staged files are sent to the repository in the background in the order of
+     * the put operations. All other operations wait until the pending files are sent, the connection close waits for
+     * the final commit. The failure to send some file is reported by the next put operation or by the connection
+     * close, and the whole write session is not committed. The debug messages of the background sends are delivered to
+     * the listeners by the next operation on the calling thread.
+     *
+     * @param writeBehind {@code true} to enable the write-behind mode
+     */
+    public void setWriteBehind( boolean writeBehind ) {
+        this.writeBehind = writeBehind;
+    }
+
+    /**
+     * Returns the directory of the content indexes used to deduplicate the uploaded contents.
+     *
+     * @return the content index directory or {@code null} if the uploaded contents are not deduplicated
+     */
+    public File getDedupIndexDirectory() {
+        return dedupIndexDirectory;
+    }
+
+    /**
+     * Sets the directory of the content indexes used to deduplicate the uploaded contents.
+     * <p/>
+     * When this directory is specified the wagon keeps there the index of the content checksums of every file that
+     * existed in the wagon repository, updated from the repository log at the first upload of every connection. A new
+     * file whose content is already present in the repository is added as a copy of the existing file instead of
+     * sending its content. The index directory can be shared by several concurrently running processes.
+     *
+     * @param dedupIndexDirectory the content index directory or {@code null} to disable the deduplication
+     */
+    public void setDedupIndexDirectory( File dedupIndexDirectory ) {
+        this.dedupIndexDirectory = dedupIndexDirectory;
+    }
+
+    /**
+     * Returns the directory of the revision indexes used to answer the update checks locally.
+     *
+     * @return the revision index directory or {@code null} if the checked paths are not persisted
+     */
+    public File getRevisionIndexDirectory() {
+        return revisionIndexDirectory;
+    }
+
+    /**
+     * Sets the directory of the revision indexes used to answer the update checks locally.
+     * <p/>
+     * When this directory is specified the wagon records there the node kinds and the last modification times of the
+     * paths checked by the {@link #resourceExists} and {@link #getIfNewer} operations, together with the revision at
+     * which they are current. At the first such operation of every connection the paths changed since that revision
+     * are requested from the repository log and forgotten, the other paths are checked without requesting anything
+     * from the repository. The index directory can be shared by several concurrently running processes.
+     *
+     * @param revisionIndexDirectory the revision index directory or {@code null} to check every path in the repository
+     */
+    public void setRevisionIndexDirectory( File revisionIndexDirectory ) {
+        this.revisionIndexDirectory = revisionIndexDirectory;
+    }
+
+    /**
+     * Checks whether the large files are read, delta-encoded and sent concurrently.
+     *
+     * @return {@code true} if the pipelined uploads are enabled
+     */
+    public boolean isPipelinedPut() {
+        return pipelinedPut;
+    }
+
+    /**
+     * Sets whether the large files are read, delta-encoded and sent concurrently.
+     * <p/>
+     * When the pipelined uploads are enabled the files of at least one megabyte are read ahead and delta-encoded by
+     * two background threads while the calling thread sends the already encoded windows to the repository, so the
+     * disk, the processor and the network are used at the same time.
+     *
+     * @param pipelinedPut {@code true} to enable the pipelined uploads
+     */
+    public void setPipelinedPut( boolean pipelinedPut ) {
+        this.pipelinedPut = pipelinedPut;
+    }
+
+
+    @Override
+    protected void openConnectionInternal() throws ConnectionException {
+        String url = repository.getUrl();
+        if ( !url.startsWith( "svn:" ) ) {
+            throw new AssertionError( "unexpected wagon protocol: " + url );
+        }
+        try {
+            // nothing is requested from the repository until the first operation, see resolveRepository()
+            wagonRepositoryUrl = SVNURL.parseURIDecoded( url.substring( "svn:".length() ) );
+            readRevision = -1;
+            metadataCache = new MetadataCache( metadataCacheSize );
+            baseContentStore = deltaBaseDirectory == null ? null : new BaseContentStore( deltaBaseDirectory );
+            blobCache = blobCacheDirectory == null ? null : new BlobCache( blobCacheDirectory, blobCacheSize );
+            metrics = new SVNWagonMetrics( SVNWagonMetrics.getProcessMetrics() );
+            prefetchRepositories = new ArrayList<SVNRepository>();
+            prefetchedFiles = new HashMap<String, PrefetchedFile>();
+        } catch ( SVNException e ) {
+            throw new ConnectionException( e.getMessage(), e );
+        }
+    }
+
+    @Override
+    protected void closeConnection() throws ConnectionException {
+        boolean committed = false;
+        try {
+            awaitWriteBehind();
+            commitWriteSession();
+            committed = true;
+            if ( writeBehindFailure != null ) {
+                throw new ConnectionException( getWriteBehindFailureMessage(), writeBehindFailure );
+            }
+        } catch ( TransferFailedException e ) {
+            throw new ConnectionException( e.getMessage(), e );
+        } catch ( SVNException e ) {
+            throw new ConnectionException( e.getMessage(), e );
+        } finally {
+            if ( deltaPipelineExecutor != null ) {
+                deltaPipelineExecutor.shutdownNow();
+                deltaPipelineExecutor = null;
+                deltaPipeline = null;
+            }
+            if ( writeBehindExecutor != null ) {
+                writeBehindExecutor.shutdownNow();
+                writeBehindExecutor = null;
+                writeBehindThread = null;
+                writeBehindNotifications.clear();
+            }
+            if ( writeBehindDirectory != null ) {
+                File[] stagedFiles = writeBehindDirectory.listFiles();
+                if ( stagedFiles != null ) {
+                    for ( File stagedFile : stagedFiles ) {
+                        stagedFile.delete();
+                    }
+                }
+                writeBehindDirectory.delete();
+                writeBehindDirectory = null;
+            }
+            deleteWriteJournalDirectory();
+            writeBehindFailure = null;
+            writeBehindFailedResourceName = null;
+            SVNRepositoryPool repositoryPool = SVNRepositoryPool.getInstance();
+            if ( writeRepository != null ) {
+                if ( committed ) {
+                    repositoryPool.release( writeRepository );
+                } else {
+                    repositoryPool.discard( writeRepository );
+                }
+                writeRepository = null;
+            }
+            if ( readRepository != null ) {
+                repositoryPool.release( readRepository );
+                readRepository = null;
+            }
+            if ( prefetchRepositories != null ) {
+                for ( SVNRepository prefetchRepository : prefetchRepositories ) {
+                    repositoryPool.release( prefetchRepository );
+                }
+                prefetchRepositories = null;
+            }
+            if ( prefetchDirectory != null ) {
+                for ( PrefetchedFile prefetchedFile : prefetchedFiles.values() ) {
+                    prefetchedFile.content.delete();
+                }
+                prefetchDirectory.delete();
+                prefetchDirectory = null;
+            }
+            prefetchedFiles = null;
+            metadataCache = null;
+            baseContentStore = null;
+            blobCache = null;
+            contentIndex = null;
+            discardRevisionIndex();
+            if ( metrics != null ) {
+                fireSessionDebug( "repository calls: " + metrics.getSummary() );
+                metrics = null;
+            }
+            wagonRepositoryUrl = null;
+            svnRepositoryRoot = null;
+            wagonRepositoryPath = null;
+        }
+    }
+
+
+    @Override
+    public boolean resourceExists( String repositoryResourceName ) throws TransferFailedException, AuthorizationException {
+        try {
+            awaitWriteBehind();
+            String repositoryResourcePath = getResourcePath( repositoryResourceName );
+            // hack for http://code.google.com/p/maven-svn-wagon/issues/detail?id=7
+            SVNNodeKind expectedResourceKind = repositoryResourceName.endsWith( "/" ) ? SVNNodeKind.DIR : SVNNodeKind.FILE;
+            if ( getStagedFile( repositoryResourcePath ) != null ) {
+                return SVNNodeKind.FILE.equals( expectedResourceKind );
+            }
+            if ( isStagedDirectory( repositoryResourcePath ) ) {
+                return SVNNodeKind.DIR.equals( expectedResourceKind );
+            }
+            if ( repositoryResourcePath.endsWith( "/" ) ) {
+                repositoryResourcePath = repositoryResourcePath.substring( 0, repositoryResourcePath.length() - 1 );
+            }
+            if ( isCopied( repositoryResourcePath ) ) {
+                commitWriteSession();
+            }
+            RevisionIndex index = isWritten( repositoryResourcePath ) ? null : getRevisionIndex();
+            SVNNodeKind repositoryResourceKind = index == null ? null : index.getNodeKind( repositoryResourcePath );
+            if ( repositoryResourceKind == null ) {
+                repositoryResourceKind = checkPath( repositoryResourcePath, readRevision );
+                if ( index != null ) {
+                    index.putNodeKind( repositoryResourcePath, repositoryResourceKind );
+                }
+            }
+            return expectedResourceKind.equals( repositoryResourceKind );
+        } catch ( SVNAuthenticationException e ) {
+            throw new AuthorizationException( e.getMessage(), e );
+        } catch ( SVNException e ) {
+            invalidateRepositoryRoot( e );
+            throw new TransferFailedException( e.getMessage(), e );
+        }
+    }
+
+
+    public void get( String repositoryResourceName, File localFile ) throws TransferFailedException, ResourceDoesNotExistException, AuthorizationException {
+        try {
+            awaitWriteBehind();
+            String repositoryResourcePath = getResourcePath( repositoryResourceName );
+            if ( isWritten( repositoryResourcePath ) ) {
+                WriteOperation stagedFile = getStagedFile( repositoryResourcePath );
+                if ( stagedFile != null ) {
+                    getStagedInternal( stagedFile, localFile, new Resource( repositoryResourceName ) );
+                    return;
+                }
+                commitWriteSession();
+            }
+            assertFileNotMissing( repositoryResourcePath, repositoryResourceName );
+            getInternal( repositoryResourcePath, localFile, new Resource( repositoryResourceName ) );
+        } catch ( SVNAuthenticationException e ) {
+            throw new AuthorizationException( e.getMessage(), e );
+        } catch ( SVNException e ) {
+            invalidateRepositoryRoot( e );
+            throw new TransferFailedException( e.getMessage(), e );
+        }
+    }
+
+    public boolean getIfNewer( String repositoryResourceName, File localFile, long timestamp ) throws TransferFailedException, ResourceDoesNotExistException, AuthorizationException {
+        try {
+            awaitWriteBehind();
+            String repositoryResourcePath = getResourcePath( repositoryResourceName );
+            if ( isWritten( repositoryResourcePath ) ) {
+                WriteOperation stagedFile = getStagedFile( repositoryResourcePath );
+                if ( stagedFile != null ) {
+                    if ( stagedFile.writeTime <= timestamp ) {
+                        fireGetInitiated( new Resource( repositoryResourceName ), localFile );
+                        return false;
+                    }
+                    getStagedInternal( stagedFile, localFile, new Resource( repositoryResourceName ) );
+                    return true;
+                }
+                commitWriteSession();
+            }
+            assertFileNotMissing( repositoryResourcePath, repositoryResourceName );
+            RevisionIndex index = getRevisionIndex();
+            SVNNodeKind indexedKind = index == null ? null : index.getNodeKind( repositoryResourcePath );
+            long indexedLastModified = index == null ? -1 : index.getLastModified( repositoryResourcePath );
+            if ( SVNNodeKind.NONE.equals( indexedKind ) ) {
+                throw new ResourceDoesNotExistException( repositoryResourceName + " does not exist" );
+            } else if ( indexedKind != null && !SVNNodeKind.FILE.equals( indexedKind ) ) {
+                throw new ResourceDoesNotExistException( repositoryResourceName + " is not a file" );
+            } else if ( indexedLastModified >= 0 ) {
+                if ( indexedLastModified <= timestamp ) {
+                    fireGetInitiated( new Resource( repositoryResourceName ), localFile );
+                    return false;
+                } else {
+                    getInternal( repositoryResourcePath, localFile, new Resource( repositoryResourceName ) );
+                    return true;
+                }
+            }
+            // only the entry is requested first, the content is requested only if it is newer
+            SVNDirEntry repositoryResourceEntry = getEntry( repositoryResourcePath, readRevision );
+            if ( index != null ) {
+                if ( repositoryResourceEntry == null ) {
+                    index.putNodeKind( repositoryResourcePath, SVNNodeKind.NONE );
+                } else if ( SVNNodeKind.FILE.equals( repositoryResourceEntry.getKind() ) ) {
+                    index.putEntry( repositoryResourcePath, SVNNodeKind.FILE, repositoryResourceEntry.getDate().getTime() );
+                } else {
+                    index.putNodeKind( repositoryResourcePath, repositoryResourceEntry.getKind() );
+                }
+            }
+            if ( repositoryResourceEntry == null ) {
+                throw new ResourceDoesNotExistException( repositoryResourceName + " does not exist" );
+            } else if ( SVNNodeKind.FILE.equals( repositoryResourceEntry.getKind() ) ) {
+                if ( repositoryResourceEntry.getDate().getTime() <= timestamp ) {
+                    fireGetInitiated( new Resource( repositoryResourceName ), localFile ); // expected by the org.apache.maven.wagon.WagonTestCase
+                    return false;
+                } else {
+                    getInternal( repositoryResourcePath, localFile, new Resource( repositoryResourceName ) );
+                    return true;
+                }
+            } else {
+                throw new ResourceDoesNotExistException( repositoryResourceName + " is not a file" );
+            }
+        } catch ( SVNAuthenticationException e ) {
+            throw new AuthorizationException( e.getMessage(), e );
+        } catch ( SVNException e ) {
+            invalidateRepositoryRoot( e );
+            throw new TransferFailedException( e.getMessage(), e );
+        }
+    }
+
+
+    public void put( File localFile, String repositoryResourceName ) throws TransferFailedException, AuthorizationException {
+        if ( repositoryResourceName.endsWith( ".asc.md5" ) || repositoryResourceName.endsWith( ".asc.sha1" ) ) {
+            // HACK: unnecessary artifacts of maven-gpg-plugin and maven-deploy-plugin combination
+            return;
+        }
+        if ( writeBehind ) {
+            putWriteBehind( localFile, repositoryResourceName );
+            return;
+        }
+        try {
+            String repositoryResourcePath = getResourcePath( repositoryResourceName );
+            putFileInternal( localFile, repositoryResourcePath, new Resource( repositoryResourceName ), false );
+        } catch ( FileNotFoundException e ) {
+            writeSuccessful = false;
+            throw new TransferFailedException( e.getMessage(), e );
+        } catch ( SVNAuthenticationException e ) {
+            writeSuccessful = false;
+            throw new AuthorizationException( e.getMessage(), e );
+        } catch ( SVNException e ) {
+            writeSuccessful = false;
+            invalidateRepositoryRoot( e );
+            throw new TransferFailedException( e.getMessage(), e );
+        } catch ( TransferFailedException e ) {
+            writeSuccessful = false;
+            throw e;
+        }
+    }
+
+
+    @Override
+    public boolean supportsDirectoryCopy() {
+        return true;
+    }
+
+    @Override
+    public void putDirectory( File localDirectory, String repositoryDirectoryName ) throws TransferFailedException, AuthorizationException {
+        try {
+            awaitWriteBehind();
+            checkWriteBehindFailure();
+            String repositoryDirectoryPath = getResourcePath( repositoryDirectoryName );
+            // the structure of the existing remote tree is requested once instead of checking every written node
+            remoteTree = fetchRemoteTree( repositoryDirectoryPath );
+            remoteTreePath = repositoryDirectoryPath;
+            putDirectoryInternal( localDirectory, repositoryDirectoryPath, new Resource( repositoryDirectoryName ) );
+        } catch ( FileNotFoundException e ) {
+            writeSuccessful = false;
+            throw new TransferFailedException( e.getMessage(), e );
+        } catch ( SVNAuthenticationException e ) {
+            writeSuccessful = false;
+            throw new AuthorizationException( e.getMessage(), e );
+        } catch ( SVNException e ) {
+            writeSuccessful = false;
+            invalidateRepositoryRoot( e );
+            throw new TransferFailedException( e.getMessage(), e );
+        } catch ( TransferFailedException e ) {
+            writeSuccessful = false;
+            throw e;
+        } finally {
+            remoteTree = null;
+            remoteTreePath = null;
+        }
+    }
+
+
+    /**
+     * Copies the specified file or directory tree to the specified destination inside the wagon repository.
+     * <p/>
+     * The copy is performed by the Subversion repository and keeps the history of the source, the content of the
+     * copied files is not transferred. The copy is a part of the current write session and is committed together with
+     * the other written resources. The source is copied from the read revision if the reads are pinned and from the
+     * latest revision otherwise, the current write session is committed first if the source was written during it.
+     * An existing destination file is replaced, an existing destination directory is not.
+     *
+     * @param sourceResourceName the source resource name relative to the wagon repository root
+     * @param destinationResourceName the destination resource name relative to the wagon repository root
+     *
+     * @throws TransferFailedException if the copy failed or if the destination cannot be replaced
+     * @throws ResourceDoesNotExistException if the source resource does not exist
+     * @throws AuthorizationException if the authorization failed
+     */
+    public void copy( String sourceResourceName, String destinationResourceName ) throws TransferFailedException, ResourceDoesNotExistException, AuthorizationException {
+        try {
+            awaitWriteBehind();
+            checkWriteBehindFailure();
+            String sourcePath = getResourcePath( sourceResourceName );
+            if ( sourcePath.endsWith( "/" ) ) {
+                sourcePath = sourcePath.substring( 0, sourcePath.length() - 1 );
+            }
+            String destinationPath = getResourcePath( destinationResourceName );
+            if ( destinationPath.endsWith( "/" ) ) {
+                destinationPath = destinationPath.substring( 0, destinationPath.length() - 1 );
+            }
+            if ( isWrittenTree( sourcePath ) || isWritten( destinationPath ) ) {
+                commitWriteSession();
+            }
+            long sourceRevision = readRevision >= 0 ? readRevision : getLatestRevision( getReadRepository() );
+            SVNNodeKind sourceKind = checkPath( sourcePath, sourceRevision );
+            if ( !SVNNodeKind.FILE.equals( sourceKind ) && !SVNNodeKind.DIR.equals( sourceKind ) ) {
+                throw new ResourceDoesNotExistException( sourceResourceName + " does not exist" );
+            }
+            if ( sourcePath.length() == 0 || sourcePath.equals( destinationPath ) || destinationPath.startsWith( sourcePath + '/' ) ) {
+                throw new TransferFailedException( "cannot copy " + sourceResourceName + " into itself" );
+            }
+            copyInternal( sourcePath, sourceRevision, sourceKind, destinationPath );
+        } catch ( SVNAuthenticationException e ) {
+            writeSuccessful = false;
+            throw new AuthorizationException( e.getMessage(), e );
+        } catch ( SVNException e ) {
+            writeSuccessful = false;
+            invalidateRepositoryRoot( e );
+            throw new TransferFailedException( e.getMessage(), e );
+        } catch ( TransferFailedException e ) {
+            writeSuccessful = false;
+            throw e;
+        }
+    }
+
+    /**
+     * Downloads the content of the specified file into the delta base directory without downloading it anywhere else.
+     *
+     * @param repositoryResourceName the resource name relative to the wagon repository root
+     *
+     * @throws TransferFailedException if the transfer failed
+     * @throws ResourceDoesNotExistException if the resource does not exist or is not a file
+     * @throws AuthorizationException if the authorization failed
+     * @throws IllegalStateException if the delta base directory is not specified
+     */
+    public void fetchDeltaBase( String repositoryResourceName ) throws TransferFailedException, ResourceDoesNotExistException, AuthorizationException {
+        if ( baseContentStore == null ) {
+            throw new IllegalStateException( "delta base directory is not specified" );
+        }
+        try {
+            awaitWriteBehind();
+            String repositoryResourcePath = getResourcePath( repositoryResourceName );
+            if ( isWritten( repositoryResourcePath ) ) {
+                commitWriteSession();
+            }
+            SVNDirEntry repositoryResourceEntry = getEntry( repositoryResourcePath, readRevision );
+            if ( repositoryResourceEntry == null ) {
+                throw new ResourceDoesNotExistException( repositoryResourceName + " does not exist" );
+            } else if ( !SVNNodeKind.FILE.equals( repositoryResourceEntry.getKind() ) ) {
+                throw new ResourceDoesNotExistException( repositoryResourceName + " is not a file" );
+            }
+            if ( baseContentStore.getContent( repositoryResourcePath, repositoryResourceEntry.getRevision() ) == null ) {
+                deltaBaseDirectory.mkdirs();
+                File tempFile = File.createTempFile( "base", ".tmp", deltaBaseDirectory );
+                try {
+                    FileOutputStream outputStream = new FileOutputStream( tempFile );
+                    long startTime = System.nanoTime();
+                    try {
+                        getReadRepository().getFile( repositoryResourcePath, repositoryResourceEntry.getRevision(), null, outputStream );
+                    } finally {
+                        metrics.record( SVNWagonMetrics.Call.GET_FILE, startTime );
+                        outputStream.close();
+                    }
+                    metrics.addBytesReceived( tempFile.length() );
+                    baseContentStore.putContent( repositoryResourcePath, repositoryResourceEntry.getRevision(), tempFile );
+                } finally {
+                    tempFile.delete();
+                }
+            }
+        } catch ( IOException e ) {
+            throw new TransferFailedException( e.getMessage(), e );
+        } catch ( SVNAuthenticationException e ) {
+            throw new AuthorizationException( e.getMessage(), e );
+        } catch ( SVNException e ) {
+            invalidateRepositoryRoot( e );
+            throw new TransferFailedException( e.getMessage(), e );
+        }
+    }
+
+
+    /**
+     * Downloads the specified files concurrently so that the subsequent {@link #get} and {@link #getIfNewer} calls
+     * for these files are served locally.
+     * <p/>
+     * The files are downloaded using up to {@link #getPrefetchSessions()} concurrent read sessions that are kept open
+     * until the connection is closed. The files that fail to download are silently skipped, so the subsequent
+     * {@code get} call for such file requests it from the repository again and reports the failure. The prefetched
+     * content is served even if the file was changed in the repository by someone else in the meantime.
+     *
+     * @param repositoryResourceNames the resource names relative to the wagon repository root
+     *
+     * @throws TransferFailedException if the transfer failed
+     * @throws AuthorizationException if the authorization failed
+     */
+    public void prefetch( Collection<String> repositoryResourceNames ) throws TransferFailedException, AuthorizationException {
+        try {
+            awaitWriteBehind();
+            final Queue<String> repositoryResourcePaths = new ConcurrentLinkedQueue<String>();
+            for ( String repositoryResourceName : repositoryResourceNames ) {
+                String repositoryResourcePath = getResourcePath( repositoryResourceName );
+                if ( isWritten( repositoryResourcePath ) ) {
+                    commitWriteSession();
+                }
+                SVNNodeKind repositoryResourceKind = metadataCache.getNodeKind( repositoryResourcePath, readRevision );
+                if ( !prefetchedFiles.containsKey( repositoryResourcePath )
+                        && ( repositoryResourceKind == null || SVNNodeKind.FILE.equals( repositoryResourceKind ) ) ) {
+                    repositoryResourcePaths.add( repositoryResourcePath );
+                }
+            }
+            if ( repositoryResourcePaths.isEmpty() ) {
+                return;
+            }
+            if ( prefetchDirectory == null ) {
+                prefetchDirectory = File.createTempFile( "maven-svn-wagon", ".prefetch" );
+                if ( !prefetchDirectory.delete() || !prefetchDirectory.mkdir() ) {
+                    throw new IOException( "failed to create " + prefetchDirectory );
+                }
+            }
+            int sessionCount = Math.max( 1, Math.min( prefetchSessions, repositoryResourcePaths.size() ) );
+            while ( prefetchRepositories.size() < sessionCount ) {
+                prefetchRepositories.add( SVNRepositoryPool.getInstance().acquire( svnRepositoryRoot, authenticationInfo, metrics ) );
+            }
+            final Map<String, PrefetchedFile> results = new ConcurrentHashMap<String, PrefetchedFile>();
+            ExecutorService executor = Executors.newFixedThreadPool( sessionCount );
+            try {
+                List<Future<Void>> futures = new ArrayList<Future<Void>>();
+                for ( int i = 0; i < sessionCount; i++ ) {
+                    final SVNRepository prefetchRepository = prefetchRepositories.get( i );
+                    futures.add( executor.submit( new Callable<Void>() {
+                        public Void call() throws Exception {
+                            String repositoryResourcePath;
+                            while ( ( repositoryResourcePath = repositoryResourcePaths.poll() ) != null ) {
+                                PrefetchedFile prefetchedFile = prefetchInternal( prefetchRepository, repositoryResourcePath );
+                                if ( prefetchedFile != null ) {
+                                    results.put( repositoryResourcePath, prefetchedFile );
+                                }
+                            }
+                            return null;
+                        }
+                    } ) );
+                }
+                for ( Future<Void> future : futures ) {
+                    future.get();
+                }
+            } catch ( InterruptedException e ) {
+                Thread.currentThread().interrupt();
+                throw new TransferFailedException( "prefetch was interrupted", e );
+            } catch ( ExecutionException e ) {
+                if ( e.getCause() instanceof SVNAuthenticationException ) {
+                    throw new AuthorizationException( e.getCause().getMessage(), e.getCause() );
+                }
+                throw new TransferFailedException( e.getCause().getMessage(), e.getCause() );
+            } finally {
+                executor.shutdownNow();
+                for ( Map.Entry<String, PrefetchedFile> entry : results.entrySet() ) {
+                    PrefetchedFile prefetchedFile = entry.getValue();
+                    metadataCache.putNodeKind( entry.getKey(), readRevision, prefetchedFile.kind );
+                    if ( prefetchedFile.content != null ) {
+                        prefetchedFiles.put( entry.getKey(), prefetchedFile );
+                    }
+                }
+            }
+        } catch ( IOException e ) {
+            throw new TransferFailedException( e.getMessage(), e );
+        } catch ( SVNAuthenticationException e ) {
+            throw new AuthorizationException( e.getMessage(), e );
+        } catch ( SVNException e ) {
+            invalidateRepositoryRoot( e );
+            throw new TransferFailedException( e.getMessage(), e );
+        }
+    }
+
+
+    @Override
+    public List<String> getFileList( String repositoryDirectoryName ) throws TransferFailedException, ResourceDoesNotExistException, AuthorizationException {
+        return getFileList( repositoryDirectoryName, false );
+    }
+
+    /**
+     * Returns the list of the entries of the specified directory, optionally including the entries of all its
+     * subdirectories.
+     *
+     * @param repositoryDirectoryName the directory name relative to the wagon repository root
+     * @param recursive {@code true} to list the whole directory tree, {@code false} to list only the direct children
+     *
+     * @return the entry paths relative to the directory, the directory paths end with a slash
+     *
+     * @throws TransferFailedException if the transfer failed
+     * @throws ResourceDoesNotExistException if the directory does not exist or is not a directory
+     * @throws AuthorizationException if the authorization failed
+     * @see #getFileList(String, boolean, FileListHandler)
+     */
+    public List<String> getFileList( String repositoryDirectoryName, boolean recursive ) throws TransferFailedException, ResourceDoesNotExistException, AuthorizationException {
+        final List<String> list = new ArrayList<String>();
+        getFileList( repositoryDirectoryName, recursive, new FileListHandler() {
+            public void handleEntry( String name ) {
+                list.add( name );
+            }
+        } );
+        return list;
+    }
+
+    /**
+     * Passes the entries of the specified directory to the specified handler as they arrive from the repository,
+     * optionally including the entries of all its subdirectories.
+     * <p/>
+     * Only the names and the kinds of the entries are requested. The direct children are listed with a single
+     * directory listing request, the whole tree is listed with a single status report that does not transfer the file
+     * contents. The listings of the direct children are cached if the read revision is pinned.
+     *
+     * @param repositoryDirectoryName the directory name relative to the wagon repository root
+     * @param recursive {@code true} to list the whole directory tree, parent directories first, {@code false} to list
+     * only the direct children
+     * @param handler the handler that receives the entry paths relative to the directory, the directory paths end with
+     * a slash
+     *
+     * @throws TransferFailedException if the transfer failed
+     * @throws ResourceDoesNotExistException if the directory does not exist or is not a directory
+     * @throws AuthorizationException if the authorization failed
+     */
+    public void getFileList( String repositoryDirectoryName, boolean recursive, final FileListHandler handler ) throws TransferFailedException, ResourceDoesNotExistException, AuthorizationException {
+        try {
+            awaitWriteBehind();
+            String repositoryDirectoryPath = getResourcePath( repositoryDirectoryName );
+            SVNNodeKind repositoryDirectoryKind = checkPath( repositoryDirectoryPath, readRevision );
+            if ( SVNNodeKind.NONE.equals( repositoryDirectoryKind ) ) {
+                throw new ResourceDoesNotExistException( repositoryDirectoryName + " does not exist" );
+            } else if ( !SVNNodeKind.DIR.equals( repositoryDirectoryKind ) ) {
+                throw new ResourceDoesNotExistException( repositoryDirectoryName + " is not a directory" );
+            }
+            if ( recursive ) {
+                listTree( repositoryDirectoryPath, handler );
+                return;
+            }
+            List<String> list = readRevision < 0 ? null : metadataCache.getListing( repositoryDirectoryPath, readRevision );
+            if ( list != null ) {
+                for ( String name : list ) {
+                    handler.handleEntry( name );
+                }
+                return;
+            }
+            final List<String> cachedList = readRevision < 0 ? null : new ArrayList<String>();
+            long startTime = System.nanoTime();
+            try {
+                getReadRepository().getDir( repositoryDirectoryPath, readRevision, null, SVNDirEntry.DIRENT_KIND, new ISVNDirEntryHandler() {
+                    public void handleDirEntry( SVNDirEntry entry ) {
+                        String name = SVNNodeKind.DIR.equals( entry.getKind() ) ? entry.getRelativePath() + '/' : entry.getRelativePath();
+                        if ( cachedList != null ) {
+                            cachedList.add( name );
+                        }
+                        handler.handleEntry( name );
+                    }
+                } );
+            } finally {
+                metrics.record( SVNWagonMetrics.Call.GET_DIR, startTime );
+            }
+            if ( cachedList != null ) {
+                metadataCache.putListing( repositoryDirectoryPath, readRevision, cachedList );
+            }
+        } catch ( SVNAuthenticationException e ) {
+            throw new AuthorizationException( e.getMessage(), e );
+        } catch ( SVNException e ) {
+            invalidateRepositoryRoot( e );
+            throw new TransferFailedException( e.getMessage(), e );
+        }
+    }
+
+
+    /**
+     * Returns the repository for read operations.
+     * <p/>
+     * This method lazily obtains the read repository from the session pool if needed.
+     *
+     * @return the repository for read operations
+     *
+     * @throws SVNException if an SVN error occurred
+     */
+    private SVNRepository getReadRepository() throws SVNException {
+        if ( readRepository == null ) {
+            readRepository = SVNRepositoryPool.getInstance().acquire( svnRepositoryRoot, authenticationInfo, metrics );
+        }
+        return readRepository;
+    }
+
+    /**
+     * Returns the repository for write operations.
+     * <p/>
+     * This method lazily obtains the write repository from the session pool if needed.
+     *
+     * @return the repository for write operations
+     *
+     * @throws SVNException if an SVN error occurred
+     */
+    private SVNRepository getWriteRepository() throws SVNException {
+        if ( writeRepository == null ) {
+            writeRepository = SVNRepositoryPool.getInstance().acquire( svnRepositoryRoot, authenticationInfo, metrics );
+        }
+        return writeRepository;
+    }
+
+    /**
+     * Returns the editor for write operations.
+     * <p/>
+     * This method lazily creates the editor and supporting objects if needed.
+     *
+     * @param message the commit log message
+     *
+     * @return the editor for write operations
+     *
+     * @throws SVNException if an SVN error occurred
+     */
+    private ISVNEditor getWriteEditor( String message ) throws SVNException {
+        if ( writeEditor == null ) {
+            writeAttempted = false;
+            writeSuccessful = true;
+            writeMessage = message;
+            writtenFileCount = 0;
+            writtenByteCount = 0;
+            writeBaseRevision = commitRetryCount > 0 ? getLatestRevision( getWriteRepository() ) : -1;
+            long startTime = System.nanoTime();
+            try {
+                writeEditor = getWriteRepository().getCommitEditor( "[maven-svn-wagon] " + message, null, false, null, null );
+            } finally {
+                metrics.record( SVNWagonMetrics.Call.GET_COMMIT_EDITOR, startTime );
+            }
+            writeEditor.openRoot( -1 );
+            openDirectories = new ArrayList<String>();
+            writeOptions = SVNWCUtil.createDefaultOptions( true );
+            addedEntries = new HashMap<String, SVNNodeKind>();
+            changedEntries = new HashSet<String>();
+            entriesDeleted = false;
+            writeJournal = new ArrayList<WriteOperation>();
+            stagedFiles = new HashMap<String, WriteOperation>();
+            copiedDirectories = new HashSet<String>();
+        }
+        return writeEditor;
+    }
+
+    /**
+     * Commits the current write session.
+     *
+     * @throws SVNException if an SVN error occurred
+     */
+    private void commitWriteSession() throws SVNException {
+        if ( writeEditor != null ) {
+            try {
+                if ( writeAttempted && writeSuccessful ) {
+                    SVNCommitInfo commitInfo = closeWriteEditor();
+                    if ( readRevision >= 0 && commitInfo.getNewRevision() > readRevision ) {
+                        readRevision = commitInfo.getNewRevision();
+                        metadataCache.clear();
+                        // the revision index is updated to the new read revision when it is used next time
+                        discardRevisionIndex();
+                    } else if ( entriesDeleted || !copiedDirectories.isEmpty() ) {
+                        // the cached node kinds of the deleted subtrees and of the copied subtrees are no longer valid
+                        metadataCache.clear();
+                    }
+                    if ( revisionIndex != null ) {
+                        for ( String path : addedEntries.keySet() ) {
+                            revisionIndex.invalidate( path );
+                        }
+                        for ( String path : changedEntries ) {
+                            revisionIndex.invalidate( path );
+                        }
+                    }
+                    for ( Map.Entry<String, SVNNodeKind> entry : addedEntries.entrySet() ) {
+                        metadataCache.putNodeKind( entry.getKey(), -1, entry.getValue() );
+                        if ( readRevision >= 0 ) {
+                            metadataCache.putNodeKind( entry.getKey(), readRevision, entry.getValue() );
+                        }
+                        String remoteTreeRelativePath = copiedDirectories.isEmpty() ? getRemoteTreeRelativePath( entry.getKey() ) : null;
+                        if ( remoteTreeRelativePath != null ) {
+                            remoteTree.addNode( remoteTreeRelativePath, entry.getValue() );
+                            if ( SVNNodeKind.FILE.equals( entry.getValue() ) ) {
+                                remoteTree.setRevision( remoteTreeRelativePath, commitInfo.getNewRevision() );
+                            }
+                        }
+                    }
+                    for ( String path : changedEntries ) {
+                        String remoteTreeRelativePath = copiedDirectories.isEmpty() ? getRemoteTreeRelativePath( path ) : null;
+                        if ( remoteTreeRelativePath != null && SVNNodeKind.FILE.equals( remoteTree.getNodeKind( remoteTreeRelativePath ) ) ) {
+                            remoteTree.setRevision( remoteTreeRelativePath, commitInfo.getNewRevision() );
+                        }
+                    }
+                    if ( !copiedDirectories.isEmpty() && remoteTreePath != null ) {
+                        // the entries of the copied directories are known only to the repository
+                        remoteTree = null;
+                        remoteTree = fetchRemoteTree( remoteTreePath );
+                        if ( remoteTree == null ) {
+                            remoteTreePath = null;
+                        }
+                    }
+                } else {
+                    writeEditor.abortEdit();
+                }
+            } finally {
+                writeEditor = null;
+                writeMessage = null;
+                openDirectories = null;
+                writeOptions = null;
+                addedEntries = null;
+                changedEntries = null;
+                writeJournal = null;
+                deleteWriteJournalDirectory();
+                stagedFiles = null;
+                copiedDirectories = null;
+            }
+        }
+    }
+
+    /**
+     * Closes the editor of the current write session, which commits the written changes.
+     * <p/>
+     * If the commit conflicts with a concurrent commit then the write session is replayed against the latest revision
+     * and the commit is retried after a randomized delay, up to {@link #getCommitRetryCount()} times.
+     *
+     * @return the commit information
+     *
+     * @throws SVNException if an SVN error occurred
+     */
+    private SVNCommitInfo closeWriteEditor() throws SVNException {
+        for ( int attempt = 0; ; attempt++ ) {
+            long startTime = System.nanoTime();
+            try {
+                closeDirectoriesInternal( writeEditor, openDirectories.size() );
+                writeEditor.closeDir();
+                return writeEditor.closeEdit();
+            } catch ( SVNException e ) {
+                if ( attempt >= commitRetryCount || !isConflict( e ) ) {
+                    throw e;
+                }
+                fireSessionDebug( "commit conflicts with a concurrent commit, retrying: " + e.getMessage() );
+                long delay = commitRetryDelay << attempt;
+                try {
+                    Thread.sleep( delay / 2 + ( long ) ( RETRY_RANDOM.nextDouble() * delay ) );
+                } catch ( InterruptedException ie ) {
+                    Thread.currentThread().interrupt();
+                    throw e;
+                }
+                replayWriteSession( e );
+            } finally {
+                metrics.record( SVNWagonMetrics.Call.COMMIT, startTime );
+            }
+        }
+    }
+
+    /**
+     * Checks whether the specified error indicates a conflict with a concurrent commit.
+     *
+     * @param e the error
+     *
+     * @return {@code true} if the error indicates a conflict
+     */
+    private static boolean isConflict( SVNException e ) {
+        for ( SVNErrorMessage errorMessage = e.getErrorMessage(); errorMessage != null; errorMessage = errorMessage.getChildErrorMessage() ) {
+            if ( CONFLICT_ERROR_CODES.contains( errorMessage.getErrorCode() ) ) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Discards the editor of the current write session and performs the recorded write operations again with a new
+     * editor based on the latest revision.
+     * <p/>
+     * The write session is replayed only if the concurrent commits did not change any path it wrote, so that the
+     * changes of the other deployers are never overwritten. The cached metadata is cleared and the remote tree
+     * snapshot is requested again, so that the replayed operations see the changes of the concurrent commits. The
+     * transfer listeners are not notified about the replayed operations.
+     *
+     * @param conflict the error that caused the replay
+     *
+     * @throws SVNException the specified error if some written path or local file was changed since it was written,
+     * or if the write operations cannot be replayed; or if an SVN error occurred
+     */
+    private void replayWriteSession( SVNException conflict ) throws SVNException {
+        List<WriteOperation> operations = writeJournal;
+        for ( WriteOperation operation : operations ) {
+            if ( operation.localFile != null && ( operation.localFile.length() != operation.length
+                    || operation.localFile.lastModified() != operation.lastModified ) ) {
+                throw conflict;
+            }
+        }
+        if ( isJournalChanged() ) {
+            throw conflict;
+        }
+        String message = writeMessage;
+        try {
+            writeEditor.abortEdit();
+        } catch ( SVNException ignored ) {
+        }
+        writeEditor = null;
+        SVNRepositoryPool.getInstance().discard( writeRepository );
+        writeRepository = null;
+        metadataCache.clear();
+        if ( remoteTreePath != null ) {
+            remoteTree = null;
+            remoteTree = fetchRemoteTree( remoteTreePath );
+            if ( remoteTree == null ) {
+                remoteTreePath = null;
+            }
+        }
+        ISVNEditor editor = getWriteEditor( message );
+        boolean suppressed = putEventsSuppressed;
+        replayingWriteSession = true;
+        putEventsSuppressed = true;
+        try {
+            for ( WriteOperation operation : operations ) {
+                if ( WriteOperation.Kind.PUT_FILE.equals( operation.kind ) ) {
+                    putFileInternal( operation.localFile, operation.repositoryPath, new Resource( operation.resourceName ), true );
+                } else if ( WriteOperation.Kind.ADD_DIRECTORY.equals( operation.kind ) ) {
+                    openDirectoriesInternal( editor, operation.repositoryPath );
+                } else if ( WriteOperation.Kind.COPY.equals( operation.kind ) ) {
+                    copyInternal( operation.copyFromPath, operation.copyFromRevision, operation.copyFromKind, operation.repositoryPath );
+                } else if ( !SVNNodeKind.NONE.equals( checkPath( operation.repositoryPath, -1 ) ) ) {
+                    deleteEntryInternal( editor, operation.repositoryPath );
+                }
+            }
+        } catch ( FileNotFoundException e ) {
+            throw conflict;
+        } catch ( TransferFailedException e ) {
+            throw conflict;
+        } finally {
+            replayingWriteSession = false;
+            putEventsSuppressed = suppressed;
+        }
+    }
+
+    /**
+     * Checks whether some commit after the base revision of the current write session changed the paths written by
+     * the session.
+     * <p/>
+     * A path is changed if it was changed itself, if some path below it was changed, or if some of its ancestors was
+     * deleted or replaced. The directories added by the session are not checked, they are opened if they were added
+     * concurrently.
+     *
+     * @return {@code true} if some written path was changed, or if the changes cannot be determined
+     *
+     * @throws SVNException if an SVN error occurred
+     */
+    private boolean isJournalChanged() throws SVNException {
+        if ( writeBaseRevision < 0 ) {
+            return true;
+        }
+        final List<String> writtenPaths = new ArrayList<String>();
+        for ( WriteOperation operation : writeJournal ) {
+            if ( !WriteOperation.Kind.ADD_DIRECTORY.equals( operation.kind ) ) {
+                writtenPaths.add( operation.repositoryPath );
+            }
+        }
+        long latestRevision = getLatestRevision( getReadRepository() );
+        if ( latestRevision <= writeBaseRevision ) {
+            return true;
+        }
+        final boolean[] changed = new boolean[ 1 ];
+        try {
+            log( writeBaseRevision + 1, latestRevision, new ISVNLogEntryHandler() {
+                public void handleLogEntry( SVNLogEntry logEntry ) {
+                    for ( Object value : logEntry.getChangedPaths().values() ) {
+                        SVNLogEntryPath entryPath = ( SVNLogEntryPath ) value;
+                        String changedPath = entryPath.getPath().substring( 1 );
+                        boolean removed = entryPath.getType() == SVNLogEntryPath.TYPE_DELETED
+                                || entryPath.getType() == SVNLogEntryPath.TYPE_REPLACED;
+                        for ( String writtenPath : writtenPaths ) {
+                            if ( changedPath.equals( writtenPath ) || changedPath.startsWith( writtenPath + '/' )
+                                    || removed && writtenPath.startsWith( changedPath + '/' ) ) {
+                                changed[ 0 ] = true;
+                            }
+                        }
+                    }
+                }
+            } );
+        } catch ( SVNAuthenticationException e ) {
+            throw e;
+        } catch ( SVNException e ) {
+            fireSessionDebug( "failed to check the concurrent changes: " + e.getMessage() );
+            return true;
+        }
+        return changed[ 0 ];
+    }
+
+    /**
+     * Commits the current write session and starts a new one with the same message if the commit limits are reached
+     * and the specified directory is not the directory the editor is currently positioned at.
+     *
+     * @param repositoryDirectoryPath the directory path relative to the Subversion repository root
+     *
+     * @throws SVNException if an SVN error occurred
+     */
+    private void splitWriteSession( String repositoryDirectoryPath ) throws SVNException {
+        if ( writeEditor == null || replayingWriteSession || !writeAttempted || !writeSuccessful ) {
+            return;
+        }
+        if ( ( commitFileLimit <= 0 || writtenFileCount < commitFileLimit )
+                && ( commitSizeLimit <= 0 || writtenByteCount < commitSizeLimit ) ) {
+            return;
+        }
+        String currentDirectoryPath = openDirectories.isEmpty() ? "" : openDirectories.get( openDirectories.size() - 1 );
+        if ( currentDirectoryPath.equals( repositoryDirectoryPath ) ) {
+            return;
+        }
+        String message = writeMessage;
+        commitWriteSession();
+        getWriteEditor( message );
+    }
+
+    /**
+     * Checks whether the specified path was added or changed during the current write session.
+     *
+     * @param repositoryPath the path relative to the Subversion repository root
+     *
+     * @return {@code true} if the path was written during the current write session
+     */
+    private boolean isWritten( String repositoryPath ) {
+        return addedEntries != null && ( addedEntries.containsKey( repositoryPath ) || changedEntries.contains( repositoryPath )
+                || isCopied( repositoryPath ) );
+    }
+
+    /**
+     * Checks whether the specified path or some path below it was written during the current write session.
+     *
+     * @param repositoryPath the path relative to the Subversion repository root
+     *
+     * @return {@code true} if the subtree was written during the current write session
+     */
+    private boolean isWrittenTree( String repositoryPath ) {
+        if ( !isWritten( repositoryPath ) ) {
+            String prefix = repositoryPath.length() == 0 ? "" : repositoryPath + '/';
+            Set<String> writtenPaths = new HashSet<String>();
+            if ( addedEntries != null ) {
+                writtenPaths.addAll( addedEntries.keySet() );
+                writtenPaths.addAll( changedEntries );
+            }
+            for ( String writtenPath : writtenPaths ) {
+                if ( writtenPath.startsWith( prefix ) ) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Checks whether the specified path is located inside a directory copied during the current write session.
+     * <p/>
+     * The entries of the copied directories are not known until the write session is committed.
+     *
+     * @param repositoryPath the path relative to the Subversion repository root
+     *
+     * @return {@code true} if the path is located inside a copied directory
+     */
+    private boolean isCopied( String repositoryPath ) {
+        if ( copiedDirectories != null ) {
+            for ( String copiedDirectoryPath : copiedDirectories ) {
+                if ( repositoryPath.startsWith( copiedDirectoryPath + '/' ) ) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the put operation of the current write session that can serve the content of the specified file.
+     *
+     * @param repositoryResourcePath the resource path relative to the Subversion repository root
+     *
+     * @return the put operation, or {@code null} if the file was not written during the current write session, was
+     * deleted after it was written, or its local file was changed since it was written
+     */
+    private WriteOperation getStagedFile( String repositoryResourcePath ) {
+        WriteOperation operation = stagedFiles == null ? null : stagedFiles.get( repositoryResourcePath );
+        if ( operation == null || operation.localFile.length() != operation.length
+                || operation.localFile.lastModified() != operation.lastModified ) {
+            return null;
+        }
+        return operation;
+    }
+
+    /**
+     * Checks whether the specified directory was added during the current write session and was not deleted since.
+     *
+     * @param repositoryDirectoryPath the directory path relative to the Subversion repository root
+     *
+     * @return {@code true} if the directory was added during the current write session
+     */
+    private boolean isStagedDirectory( String repositoryDirectoryPath ) {
+        if ( repositoryDirectoryPath.endsWith( "/" ) ) {
+            repositoryDirectoryPath = repositoryDirectoryPath.substring( 0, repositoryDirectoryPath.length() - 1 );
+        }
+        if ( addedEntries == null || !SVNNodeKind.DIR.equals( addedEntries.get( repositoryDirectoryPath ) ) ) {
+            return false;
+        }
+        for ( String path = repositoryDirectoryPath; path.length() > 0; path = path.substring( 0, Math.max( path.lastIndexOf( '/' ), 0 ) ) ) {
+            if ( changedEntries.contains( path ) ) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the kind of the node at the specified repository path.
+     * <p/>
+     * The node kind is requested from the repository only once per connection, subsequent requests are served from
+     * the cache that is also updated with the entries added by the committed write sessions.
+     *
+     * @param repositoryPath the path relative to the Subversion repository root
+     * @param revision the revision, or -1 for the latest revision
+     *
+     * @return the node kind
+     *
+     * @throws SVNException if an SVN error occurred
+     */
+    private SVNNodeKind checkPath( String repositoryPath, long revision ) throws SVNException {
+        if ( repositoryPath.endsWith( "/" ) ) {
+            repositoryPath = repositoryPath.substring( 0, repositoryPath.length() - 1 );
+        }
+        String remoteTreeRelativePath = revision < 0 ? getRemoteTreeRelativePath( repositoryPath ) : null;
+        if ( remoteTreeRelativePath != null ) {
+            return remoteTree.getNodeKind( remoteTreeRelativePath );
+        }
+        SVNNodeKind repositoryKind = metadataCache.getNodeKind( repositoryPath, revision );
+        if ( repositoryKind == null ) {
+            repositoryKind = checkPathInternal( repositoryPath, revision );
+            metadataCache.putNodeKind( repositoryPath, revision, repositoryKind );
+        }
+        return repositoryKind;
+    }
+
+    /**
+     * Returns the specified path relative to the root of the remote tree snapshot.
+     *
+     * @param repositoryPath the path relative to the Subversion repository root
+     *
+     * @return the path relative to the remote tree root, or {@code null} if there is no snapshot or the path is outside
+     * of the snapshot
+     */
+    private String getRemoteTreeRelativePath( String repositoryPath ) {
+        if ( remoteTree == null ) {
+            return null;
+        } else if ( repositoryPath.equals( remoteTreePath ) ) {
+            return "";
+        } else if ( remoteTreePath.length() == 0 ) {
+            return repositoryPath;
+        } else if ( repositoryPath.startsWith( remoteTreePath + '/' ) ) {
+            return repositoryPath.substring( remoteTreePath.length() + 1 );
+        } else {
+            return null;
+        }
+    }
+
+    /**
+     * Requests the snapshot of the structure of the specified directory tree at the latest revision.
+     *
+     * @param repositoryDirectoryPath the directory path relative to the Subversion repository root
+     *
+     * @return the tree snapshot, or {@code null} if the path exists and is not a directory
+     *
+     * @throws SVNException if an SVN error occurred
+     */
+    private RemoteTree fetchRemoteTree( String repositoryDirectoryPath ) throws SVNException {
+        SVNNodeKind repositoryDirectoryKind = checkPath( repositoryDirectoryPath, -1 );
+        if ( SVNNodeKind.NONE.equals( repositoryDirectoryKind ) ) {
+            return new RemoteTree( false );
+        } else if ( !SVNNodeKind.DIR.equals( repositoryDirectoryKind ) ) {
+            return null;
+        }
+        SVNRepository repository = getReadRepository();
+        long revision = getLatestRevision( repository );
+        repository.setLocation( svnRepositoryRoot.appendPath( repositoryDirectoryPath, false ), false );
+        long startTime = System.nanoTime();
+        try {
+            return RemoteTree.fetch( repository, revision );
+        } finally {
+            metrics.record( SVNWagonMetrics.Call.STATUS, startTime );
+            repository.setLocation( svnRepositoryRoot, false );
+        }
+    }
+
+    /**
+     * Returns the index of the checked paths of the wagon repository, updating it to the read revision at the first
+     * call during the connection.
+     * <p/>
+     * The paths changed since the index revision are requested with a single log request and forgotten. The index is
+     * emptied if it is newer than the read revision or if the log cannot be requested.
+     *
+     * @return the revision index, or {@code null} if the revision index directory is not specified
+     *
+     * @throws SVNException if an SVN error occurred
+     */
+    private RevisionIndex getRevisionIndex() throws SVNException {
+        if ( revisionIndexDirectory == null ) {
+            return null;
+        }
+        if ( revisionIndex == null ) {
+            SVNRepository repository = getReadRepository();
+            String repositoryUuid = getRepositoryUUID( repository );
+            final RevisionIndex index = new RevisionIndex( revisionIndexDirectory, repositoryUuid, wagonRepositoryPath );
+            try {
+                index.load();
+            } catch ( IOException e ) {
+                fireSessionDebug( "failed to load the revision index: " + e.getMessage() );
+            }
+            long revision = readRevision >= 0 ? readRevision : getLatestRevision( repository );
+            long indexedRevision = index.getRevision();
+            if ( indexedRevision < 0 || indexedRevision > revision ) {
+                index.reset( revision );
+            } else if ( indexedRevision < revision ) {
+                try {
+                    log( indexedRevision + 1, revision, new ISVNLogEntryHandler() {
+                        public void handleLogEntry( SVNLogEntry logEntry ) {
+                            for ( Object path : logEntry.getChangedPaths().keySet() ) {
+                                index.invalidate( ( ( String ) path ).substring( 1 ) );
+                            }
+                        }
+                    } );
+                    index.setRevision( revision );
+                } catch ( SVNAuthenticationException e ) {
+                    throw e;
+                } catch ( SVNException e ) {
+                    fireSessionDebug( "failed to update the revision index: " + e.getMessage() );
+                    index.reset( revision );
+                }
+            }
+            revisionIndex = index;
+        }
+        return revisionIndex;
+    }
+
+    /**
+     * Stores the revision index and forgets it.
+     */
+    private void discardRevisionIndex() {
+        if ( revisionIndex != null ) {
+            try {
+                revisionIndex.store();
+            } catch ( IOException e ) {
+                fireSessionDebug( "failed to store the revision index: " + e.getMessage() );
+            }
+            revisionIndex = null;
+        }
+    }
+
+    /**
+     * Returns the index of the contents of the wagon repository, updating it to the latest revision at the first call
+     * during the connection.
+     * <p/>
+     * The files changed since the indexed revision are found in the repository log and their checksums are requested
+     * one by one, unless there are too many of them, in which case the whole tree is indexed with a single status
+     * report. The index is stored even if it was only partially updated, the failures to store it are ignored.
+     *
+     * @return the content index
+     *
+     * @throws SVNException if an SVN error occurred
+     */
+    private ContentIndex getContentIndex() throws SVNException {
+        if ( contentIndex == null ) {
+            SVNRepository repository = getReadRepository();
+            String repositoryUuid = getRepositoryUUID( repository );
+            ContentIndex index = new ContentIndex( dedupIndexDirectory, repositoryUuid, wagonRepositoryPath );
+            try {
+                index.load();
+            } catch ( IOException e ) {
+                fireSessionDebug( "failed to load the content index: " + e.getMessage() );
+            }
+            long latestRevision = getLatestRevision( repository );
+            long indexedRevision = index.getRevision();
+            if ( indexedRevision < latestRevision ) {
+                Map<String, Long> changedFiles = indexedRevision < 0 ? null : getChangedFiles( indexedRevision + 1, latestRevision );
+                if ( changedFiles == null || changedFiles.size() > CONTENT_INDEX_LOG_LIMIT ) {
+                    indexTree( index, latestRevision );
+                } else {
+                    for ( Map.Entry<String, Long> entry : changedFiles.entrySet() ) {
+                        SVNProperties properties = new SVNProperties();
+                        long startTime = System.nanoTime();
+                        try {
+                            repository.getFile( entry.getKey(), entry.getValue(), properties, null );
+                        } catch ( SVNAuthenticationException e ) {
+                            throw e;
+                        } catch ( SVNException e ) {
+                            // the log does not always report the node kinds, the directories are skipped here
+                            fireSessionDebug( "failed to index " + entry.getKey() + "@" + entry.getValue() + ": " + e.getMessage() );
+                            continue;
+                        } finally {
+                            metrics.record( SVNWagonMetrics.Call.GET_FILE, startTime );
+                        }
+                        String checksum = properties.getStringValue( SVNProperty.CHECKSUM );
+                        if ( checksum != null ) {
+                            index.addEntry( checksum, entry.getKey(), entry.getValue() );
+                        }
+                    }
+                }
+                try {
+                    index.store( latestRevision );
+                } catch ( IOException e ) {
+                    fireSessionDebug( "failed to store the content index: " + e.getMessage() );
+                }
+            }
+            contentIndex = index;
+        }
+        return contentIndex;
+    }
+
+    /**
+     * Returns the files of the wagon repository that were added or modified in the specified revision range according
+     * to the repository log.
+     * <p/>
+     * The copied directories are not expanded, the copied files already have their contents indexed under the copy
+     * source paths if the sources are located inside the wagon repository.
+     *
+     * @param startRevision the first revision
+     * @param endRevision the last revision
+     *
+     * @return the revisions of the last changes mapped by the file paths relative to the Subversion repository root
+     *
+     * @throws SVNException if an SVN error occurred
+     */
+    private Map<String, Long> getChangedFiles( long startRevision, long endRevision ) throws SVNException {
+        final String prefix = wagonRepositoryPath.length() == 0 ? "/" : '/' + wagonRepositoryPath + '/';
+        final Map<String, Long> changedFiles = new LinkedHashMap<String, Long>();
+        log( startRevision, endRevision, new ISVNLogEntryHandler() {
+            public void handleLogEntry( SVNLogEntry logEntry ) {
+                for ( Object value : logEntry.getChangedPaths().values() ) {
+                    SVNLogEntryPath entryPath = ( SVNLogEntryPath ) value;
+                    if ( entryPath.getType() == SVNLogEntryPath.TYPE_DELETED || !entryPath.getPath().startsWith( prefix )
+                            || SVNNodeKind.DIR.equals( entryPath.getKind() ) ) {
+                        continue;
+                    }
+                    changedFiles.put( entryPath.getPath().substring( 1 ), logEntry.getRevision() );
+                }
+            }
+        } );
+        return changedFiles;
+    }
+
+    /**
+     * Records the contents of all files of the wagon repository in the specified revision using a single status report.
+     *
+     * @param index the content index
+     * @param revision the revision
+     *
+     * @throws SVNException if an SVN error occurred
+     */
+    private void indexTree( final ContentIndex index, final long revision ) throws SVNException {
+        if ( !SVNNodeKind.DIR.equals( checkPath( wagonRepositoryPath, revision ) ) ) {
+            return;
+        }
+        final String prefix = wagonRepositoryPath.length() == 0 ? "" : wagonRepositoryPath + '/';
+        SVNRepository repository = getReadRepository();
+        repository.setLocation( svnRepositoryRoot.appendPath( wagonRepositoryPath, false ), false );
+        long startTime = System.nanoTime();
+        try {
+            RemoteTree.report( repository, revision, new RemoteTree.TreeEditor() {
+
+                @Override
+                void addNode( String path, SVNNodeKind nodeKind ) {
+                }
+
+                @Override
+                public void closeFile( String path, String textChecksum ) {
+                    if ( textChecksum != null ) {
+                        index.addEntry( textChecksum, prefix + path, revision );
+                    }
+                }
+
+            } );
+        } finally {
+            metrics.record( SVNWagonMetrics.Call.STATUS, startTime );
+            repository.setLocation( svnRepositoryRoot, false );
+        }
+    }
+
+    /**
+     * Passes all nodes of the specified directory tree to the specified handler using a single status report.
+     *
+     * @param repositoryDirectoryPath the directory path relative to the Subversion repository root
+     * @param handler the handler that receives the node paths relative to the directory
+     *
+     * @throws SVNException if an SVN error occurred
+     */
+    private void listTree( String repositoryDirectoryPath, final FileListHandler handler ) throws SVNException {
+        SVNRepository repository = getReadRepository();
+        long revision = readRevision < 0 ? getLatestRevision( repository ) : readRevision;
+        repository.setLocation( svnRepositoryRoot.appendPath( repositoryDirectoryPath, false ), false );
+        long startTime = System.nanoTime();
+        try {
+            RemoteTree.report( repository, revision, new RemoteTree.TreeEditor() {
+                @Override
+                void addNode( String path, SVNNodeKind nodeKind ) {
+                    handler.handleEntry( SVNNodeKind.DIR.equals( nodeKind ) ? path + '/' : path );
+                }
+            } );
+        } finally {
+            metrics.record( SVNWagonMetrics.Call.STATUS, startTime );
+            repository.setLocation( svnRepositoryRoot, false );
+        }
+    }
+
+    /**
+     * Returns the entry of the node at the specified repository path.
+     * <p/>
+     * The entries are cached only for the specific revisions.
+     *
+     * @param repositoryPath the path relative to the Subversion repository root
+     * @param revision the revision, or -1 for the latest revision
+     *
+     * @return the entry or {@code null} if the node does not exist
+     *
+     * @throws SVNException if an SVN error occurred
+     */
+    private SVNDirEntry getEntry( String repositoryPath, long revision ) throws SVNException {
+        SVNDirEntry entry = revision < 0 ? null : metadataCache.getEntry( repositoryPath, revision );
+        if ( entry == null ) {
+            long startTime = System.nanoTime();
+            try {
+                entry = getReadRepository().info( repositoryPath, revision );
+            } finally {
+                metrics.record( SVNWagonMetrics.Call.INFO, startTime );
+            }
+            metadataCache.putNodeKind( repositoryPath, revision, entry == null ? SVNNodeKind.NONE : entry.getKind() );
+            if ( entry != null && revision >= 0 ) {
+                metadataCache.putEntry( repositoryPath, revision, entry );
+            }
+        }
+        return entry;
+    }
+
+    /**
+     * Requests the kind of the node at the specified repository path from the repository.
+     *
+     * @param repositoryPath the path relative to the Subversion repository root
+     * @param revision the revision, or -1 for the latest revision
+     *
+     * @return the node kind
+     *
+     * @throws SVNException if an SVN error occurred
+     */
+    SVNNodeKind checkPathInternal( String repositoryPath, long revision ) throws SVNException {
+        long startTime = System.nanoTime();
+        try {
+            return getReadRepository().checkPath( repositoryPath, revision );
+        } finally {
+            metrics.record( SVNWagonMetrics.Call.CHECK_PATH, startTime );
+        }
+    }
+
+    /**
+     * Requests the latest revision from the specified repository.
+     *
+     * @param repository the repository
+     *
+     * @return the latest revision
+     *
+     * @throws SVNException if an SVN error occurred
+     */
+    private long getLatestRevision( SVNRepository repository ) throws SVNException {
+        long startTime = System.nanoTime();
+        try {
+            return repository.getLatestRevision();
+        } finally {
+            metrics.record( SVNWagonMetrics.Call.LATEST_REVISION, startTime );
+        }
+    }
+
+    /**
+     * Returns the UUID of the repository, requesting it only if it was not resolved together with the repository root.
+     *
+     * @param repository the repository
+     *
+     * @return the repository UUID
+     *
+     * @throws SVNException if an SVN error occurred
+     */
+    private String getRepositoryUUID( SVNRepository repository ) throws SVNException {
+        String repositoryUuid = SVNRepositoryPool.getInstance().getRepositoryUUID( svnRepositoryRoot );
+        if ( repositoryUuid == null ) {
+            long startTime = System.nanoTime();
+            try {
+                repositoryUuid = repository.getRepositoryUUID( true );
+            } finally {
+                metrics.record( SVNWagonMetrics.Call.REPOSITORY_UUID, startTime );
+            }
+        }
+        return repositoryUuid;
+    }
+
+    /**
+     * Passes the log entries of the wagon repository in the specified revision range, with the changed paths, to the
+     * specified handler.
+     *
+     * @param startRevision the first revision
+     * @param endRevision the last revision
+     * @param handler the log entry handler
+     *
+     * @throws SVNException if an SVN error occurred
+     */
+    private void log( long startRevision, long endRevision, ISVNLogEntryHandler handler ) throws SVNException {
+        long startTime = System.nanoTime();
+        try {
+            getReadRepository().log( new String[] { wagonRepositoryPath }, startRevision, endRevision, true, false, handler );
+        } finally {
+            metrics.record( SVNWagonMetrics.Call.LOG, startTime );
+        }
+    }
+
+
+    /**
+     * Throws the appropriate exception if the specified path is already known to be not a file.
+     * <p/>
+     * This method does not request anything from the repository.
+     *
+     * @param repositoryResourcePath the resource path relative to the Subversion repository root
+     * @param repositoryResourceName the resource name relative to the wagon repository root
+     *
+     * @throws ResourceDoesNotExistException if the resource is known to be missing or to be not a file
+     */
+    private void assertFileNotMissing( String repositoryResourcePath, String repositoryResourceName ) throws ResourceDoesNotExistException {
+        SVNNodeKind repositoryResourceKind = metadataCache.getNodeKind( repositoryResourcePath, readRevision );
+        if ( SVNNodeKind.NONE.equals( repositoryResourceKind ) ) {
+            throw new ResourceDoesNotExistException( repositoryResourceName + " does not exist" );
+        } else if ( repositoryResourceKind != null && !SVNNodeKind.FILE.equals( repositoryResourceKind ) ) {
+            throw new ResourceDoesNotExistException( repositoryResourceName + " is not a file" );
+        }
+    }
+
+    /**
+     * Requests the properties and optionally the content of the specified file in a single request.
+     * <p/>
+     * If the request fails because the resource is missing or is not a file then the node kind is derived from
+     * the error code if possible and is requested from the repository otherwise.
+     *
+     * @param repositoryResourcePath the resource path relative to the Subversion repository root
+     * @param repositoryResourceName the resource name relative to the wagon repository root
+     * @param properties the properties to fill
+     * @param outputStream the stream to write the content to, or {@code null} if the content is not needed
+     *
+     * @throws ResourceDoesNotExistException if the resource does not exist or is not a file
+     * @throws SVNException if an SVN error occurred
+     */
+    private void getFile( String repositoryResourcePath, String repositoryResourceName, SVNProperties properties, OutputStream outputStream ) throws ResourceDoesNotExistException, SVNException {
+        long startTime = System.nanoTime();
+        try {
+            try {
+                getReadRepository().getFile( repositoryResourcePath, readRevision, properties, outputStream );
+            } finally {
+                metrics.record( SVNWagonMetrics.Call.GET_FILE, startTime );
+            }
+            metadataCache.putNodeKind( repositoryResourcePath, readRevision, SVNNodeKind.FILE );
+        } catch ( SVNException e ) {
+            SVNErrorCode errorCode = e.getErrorMessage().getErrorCode();
+            SVNNodeKind repositoryResourceKind;
+            if ( SVNErrorCode.FS_NOT_FOUND.equals( errorCode ) || SVNErrorCode.RA_DAV_PATH_NOT_FOUND.equals( errorCode ) ) {
+                repositoryResourceKind = SVNNodeKind.NONE;
+                metadataCache.putNodeKind( repositoryResourcePath, readRevision, repositoryResourceKind );
+            } else if ( SVNErrorCode.FS_NOT_FILE.equals( errorCode ) ) {
+                repositoryResourceKind = SVNNodeKind.DIR;
+                metadataCache.putNodeKind( repositoryResourcePath, readRevision, repositoryResourceKind );
+            } else {
+                repositoryResourceKind = checkPath( repositoryResourcePath, readRevision );
+            }
+            if ( SVNNodeKind.FILE.equals( repositoryResourceKind ) ) {
+                throw e;
+            } else if ( SVNNodeKind.NONE.equals( repositoryResourceKind ) ) {
+                throw new ResourceDoesNotExistException( repositoryResourceName + " does not exist" );
+            } else {
+                throw new ResourceDoesNotExistException( repositoryResourceName + " is not a file" );
+            }
+        }
+    }
+
+    /**
+     * Returns the last modification time from the specified file properties.
+     *
+     * @param properties the file properties
+     *
+     * @return the last modification time
+     */
+    private static long getLastModified( SVNProperties properties ) {
+        String committedDate = properties.getStringValue( SVNProperty.COMMITTED_DATE );
+        return committedDate == null ? 0 : SVNDate.parseDate( committedDate ).getTime();
+    }
+
+    /**
+     * Returns the revision in which the file was last changed from the specified file properties.
+     *
+     * @param properties the file properties
+     *
+     * @return the last changed revision
+     */
+    private static long getCommittedRevision( SVNProperties properties ) {
+        String committedRevision = properties.getStringValue( SVNProperty.COMMITTED_REVISION );
+        return committedRevision == null ? -1 : Long.parseLong( committedRevision );
+    }
+
+
+    /**
+     * Resolves the Subversion repository root if it was not resolved yet.
+     * <p/>
+     * The root is looked up in the process-wide session pool first, then in the persistent root cache, and only then
+     * it is requested from the repository. If the read revision is pinned it is also requested here.
+     *
+     * @throws SVNException if an SVN error occurred
+     */
+    private void resolveRepository() throws SVNException {
+        if ( svnRepositoryRoot != null ) {
+            return;
+        }
+        SVNRepositoryPool repositoryPool = SVNRepositoryPool.getInstance();
+        SVNURL repositoryRoot = repositoryPool.getCachedRepositoryRoot( wagonRepositoryUrl );
+        if ( repositoryRoot == null && rootCacheFile != null ) {
+            try {
+                String cachedRepositoryRoot = new RepositoryRootCache( rootCacheFile ).get( wagonRepositoryUrl.toString() );
+                if ( cachedRepositoryRoot != null ) {
+                    repositoryRoot = SVNURL.parseURIDecoded( cachedRepositoryRoot );
+                    repositoryPool.putRepositoryRoot( wagonRepositoryUrl, repositoryRoot );
+                }
+            } catch ( IOException e ) {
+                fireSessionDebug( "failed to read the repository root cache: " + e.getMessage() );
+            }
+        }
+        if ( repositoryRoot == null ) {
+            repositoryRoot = repositoryPool.getRepositoryRoot( wagonRepositoryUrl, authenticationInfo, metrics );
+            if ( rootCacheFile != null ) {
+                try {
+                    new RepositoryRootCache( rootCacheFile ).put( wagonRepositoryUrl.toString(), repositoryRoot.toString() );
+                } catch ( IOException e ) {
+                    fireSessionDebug( "failed to update the repository root cache: " + e.getMessage() );
+                }
+            }
+        }
+        String path = wagonRepositoryUrl.getPath().substring( repositoryRoot.getPath().length() );
+        if ( path.startsWith( "/" ) ) {
+            path = path.substring( 1 );
+        }
+        if ( path.endsWith( "/" ) ) {
+            path = path.substring( 0, path.length() - 1 );
+        }
+        svnRepositoryRoot = repositoryRoot;
+        wagonRepositoryPath = path;
+        readRevision = pinnedReads ? getLatestRevision( getReadRepository() ) : -1;
+    }
+
+    /**
+     * Forgets the cached repository root if the specified error suggests that the repository layout has changed, so
+     * that the next connection resolves the root again.
+     *
+     * @param e the error
+     */
+    private void invalidateRepositoryRoot( SVNException e ) {
+        for ( SVNErrorMessage errorMessage = e.getErrorMessage(); errorMessage != null; errorMessage = errorMessage.getChildErrorMessage() ) {
+            if ( LAYOUT_ERROR_CODES.contains( errorMessage.getErrorCode() ) ) {
+                SVNRepositoryPool.getInstance().invalidateRepositoryRoot( wagonRepositoryUrl );
+                if ( rootCacheFile != null ) {
+                    try {
+                        new RepositoryRootCache( rootCacheFile ).put( wagonRepositoryUrl.toString(), null );
+                    } catch ( IOException ioe ) {
+                        fireSessionDebug( "failed to update the repository root cache: " + ioe.getMessage() );
+                    }
+                }
+                return;
+            }
+        }
+    }
+
+    /**
+     * Converts the wagon resource name to the Subversion repository path.
+     * <p/>
+     * This method resolves the Subversion repository root if it was not resolved yet.
+     *
+     * @param repositoryResourceName the resource name relative to the wagon repository root
+     *
+     * @return the resource name relative to the Subversion repository root
+     *
+     * @throws SVNException if an SVN error occurred
+     */
+    private String getResourcePath( String repositoryResourceName ) throws SVNException {
+        resolveRepository();
+        if ( ".".equals( repositoryResourceName ) ) {
             return wagonRepositoryPath;
         }
         if ( repositoryResourceName.startsWith( "." ) ) {
@@ -463,17 +2342,65 @@ public class SVNWagon extends AbstractWagon {
     }
 
 
-    private void openDirectoriesInternal( ISVNEditor editor, String[] pathComponents, int offset, int count ) throws TransferFailedException, SVNException {
-        String repositoryDirectoryPath = null;
-        for ( int i = 0; i < count; i++ ) {
-            String pathComponent = pathComponents[ offset + i ];
-            repositoryDirectoryPath = repositoryDirectoryPath == null ? pathComponent : repositoryDirectoryPath + '/' + pathComponent;
-            openDirectoryInternal( editor, repositoryDirectoryPath );
+    /**
+     * Deletes the specified entry in the current write session.
+     *
+     * @param editor the editor
+     * @param repositoryPath the entry path relative to the Subversion repository root
+     *
+     * @throws TransferFailedException if the parent directory is not a directory
+     * @throws SVNException if an SVN error occurred
+     */
+    private void deleteEntryInternal( ISVNEditor editor, String repositoryPath ) throws TransferFailedException, SVNException {
+        int lastSlash = repositoryPath.lastIndexOf( '/' );
+        openDirectoriesInternal( editor, lastSlash < 0 ? "" : repositoryPath.substring( 0, lastSlash ) );
+        writeAttempted = true;
+        changedEntries.add( repositoryPath );
+        entriesDeleted = true;
+        editor.deleteEntry( repositoryPath, -1 );
+        writeJournal.add( new WriteOperation( WriteOperation.Kind.DELETE_ENTRY, repositoryPath, null, null ) );
+        for ( Iterator<String> iterator = stagedFiles.keySet().iterator(); iterator.hasNext(); ) {
+            String stagedPath = iterator.next();
+            if ( stagedPath.equals( repositoryPath ) || stagedPath.startsWith( repositoryPath + '/' ) ) {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Positions the editor at the specified directory.
+     * <p/>
+     * The directories opened by the previous operations are kept open between the operations, only the directories
+     * that are not the ancestors of the specified directory are closed and only the missing directories are opened.
+     *
+     * @param editor the editor
+     * @param repositoryDirectoryPath the directory path relative to the Subversion repository root
+     *
+     * @throws TransferFailedException if some path component exists and is not a directory
+     * @throws SVNException if an SVN error occurred
+     */
+    private void openDirectoriesInternal( ISVNEditor editor, String repositoryDirectoryPath ) throws TransferFailedException, SVNException {
+        List<String> repositoryDirectoryPaths = new ArrayList<String>();
+        String path = null;
+        for ( String pathComponent : repositoryDirectoryPath.split( "/" ) ) {
+            if ( pathComponent.length() > 0 ) {
+                path = path == null ? pathComponent : path + '/' + pathComponent;
+                repositoryDirectoryPaths.add( path );
+            }
+        }
+        int commonCount = 0;
+        while ( commonCount < openDirectories.size() && commonCount < repositoryDirectoryPaths.size()
+                && openDirectories.get( commonCount ).equals( repositoryDirectoryPaths.get( commonCount ) ) ) {
+            commonCount++;
+        }
+        closeDirectoriesInternal( editor, openDirectories.size() - commonCount );
+        for ( int i = commonCount; i < repositoryDirectoryPaths.size(); i++ ) {
+            openDirectoryInternal( editor, repositoryDirectoryPaths.get( i ) );
         }
     }
 
     private void openDirectoryInternal( ISVNEditor editor, String repositoryDirectoryPath ) throws TransferFailedException, SVNException {
-        SVNNodeKind repositoryDirectoryKind = getReadRepository().checkPath( repositoryDirectoryPath, -1 );
+        SVNNodeKind repositoryDirectoryKind = checkPath( repositoryDirectoryPath, -1 );
         boolean repositoryDirectoryExists;
         if ( SVNNodeKind.DIR.equals( repositoryDirectoryKind ) ) {
             repositoryDirectoryExists = true;
@@ -482,13 +2409,15 @@ public class SVNWagon extends AbstractWagon {
         } else {
             throw new TransferFailedException( repositoryDirectoryPath + " is not a directory" );
         }
-        if ( repositoryDirectoryExists || addedEntries.contains( repositoryDirectoryPath ) ) {
+        if ( repositoryDirectoryExists || addedEntries.containsKey( repositoryDirectoryPath ) ) {
             editor.openDir( repositoryDirectoryPath, -1 );
         } else {
             writeAttempted = true;
-            addedEntries.add( repositoryDirectoryPath );
+            addedEntries.put( repositoryDirectoryPath, SVNNodeKind.DIR );
             editor.addDir( repositoryDirectoryPath, null, -1 );
+            writeJournal.add( new WriteOperation( WriteOperation.Kind.ADD_DIRECTORY, repositoryDirectoryPath, null, null ) );
         }
+        openDirectories.add( repositoryDirectoryPath );
     }
 
     private void closeDirectoriesInternal( ISVNEditor editor, int count ) throws SVNException {
@@ -499,42 +2428,514 @@ public class SVNWagon extends AbstractWagon {
 
     private void closeDirectoryInternal( ISVNEditor editor ) throws SVNException {
         editor.closeDir();
+        openDirectories.remove( openDirectories.size() - 1 );
+    }
+
+    /**
+     * Downloads the specified file using the specified prefetch repository.
+     * <p/>
+     * This method is called concurrently and must not access the wagon state except the immutable fields.
+     *
+     * @param prefetchRepository the prefetch repository
+     * @param repositoryResourcePath the resource path relative to the Subversion repository root
+     *
+     * @return the prefetched file, or {@code null} if the download failed
+     *
+     * @throws IOException if an I/O error occurred
+     * @throws SVNAuthenticationException if the authentication failed
+     */
+    private PrefetchedFile prefetchInternal( SVNRepository prefetchRepository, String repositoryResourcePath ) throws IOException, SVNAuthenticationException {
+        File content = File.createTempFile( "prefetch", ".tmp", prefetchDirectory );
+        SVNProperties properties = new SVNProperties();
+        boolean successful = false;
+        try {
+            OutputStream outputStream = new FileOutputStream( content );
+            long startTime = System.nanoTime();
+            try {
+                prefetchRepository.getFile( repositoryResourcePath, readRevision, properties, outputStream );
+            } finally {
+                metrics.record( SVNWagonMetrics.Call.GET_FILE, startTime );
+                outputStream.close();
+            }
+            metrics.addBytesReceived( content.length() );
+            successful = true;
+            return new PrefetchedFile( SVNNodeKind.FILE, content, properties );
+        } catch ( SVNAuthenticationException e ) {
+            throw e;
+        } catch ( SVNException e ) {
+            SVNErrorCode errorCode = e.getErrorMessage().getErrorCode();
+            if ( SVNErrorCode.FS_NOT_FOUND.equals( errorCode ) || SVNErrorCode.RA_DAV_PATH_NOT_FOUND.equals( errorCode ) ) {
+                return new PrefetchedFile( SVNNodeKind.NONE, null, null );
+            } else if ( SVNErrorCode.FS_NOT_FILE.equals( errorCode ) ) {
+                return new PrefetchedFile( SVNNodeKind.DIR, null, null );
+            } else {
+                return null;
+            }
+        } finally {
+            if ( !successful ) {
+                content.delete();
+            }
+        }
     }
 
-    private void getInternal( String repositoryResourcePath, File localFile, Resource wagonResource ) throws TransferFailedException, SVNException, FileNotFoundException {
-        if ( addedEntries != null && addedEntries.contains( repositoryResourcePath ) ) {
+    /**
+     * Removes the prefetched file for the specified path if it was not requested yet.
+     *
+     * @param repositoryResourcePath the resource path relative to the Subversion repository root
+     */
+    private void discardPrefetchedFile( String repositoryResourcePath ) {
+        PrefetchedFile prefetchedFile = prefetchedFiles.remove( repositoryResourcePath );
+        if ( prefetchedFile != null ) {
+            prefetchedFile.content.delete();
+        }
+    }
+
+    private void getInternal( String repositoryResourcePath, File localFile, Resource wagonResource ) throws TransferFailedException, ResourceDoesNotExistException, SVNException {
+        if ( isWritten( repositoryResourcePath ) ) {
             throw new AssertionError( "unexpected wagon state" );
         }
         fireGetInitiated( wagonResource, localFile );
         if ( !localFile.getParentFile().exists() && !localFile.getParentFile().mkdirs() ) {
             throw new TransferFailedException( "failed to create " + localFile.getParentFile() );
         }
-        SVNDirEntry entry = getReadRepository().info( repositoryResourcePath, -1 );
-        wagonResource.setContentLength( entry.getSize() );
-        wagonResource.setLastModified( entry.getDate().getTime() );
-        fireGetStarted( wagonResource, localFile );
-        FileOutputStream outputStream = new FileOutputStream( localFile );
+        PrefetchedFile prefetchedFile = prefetchedFiles.remove( repositoryResourcePath );
+        SVNProperties properties = prefetchedFile == null ? new SVNProperties() : prefetchedFile.properties;
+        // the cache is consulted only for the pinned reads, so that a miss does not cost an extra request at the latest revision
+        InputStream cachedContent = prefetchedFile != null || blobCache == null || readRevision < 0 ? null
+                : getCachedContent( repositoryResourcePath, wagonResource.getName(), properties );
+        GetOutputStream outputStream = new GetOutputStream( wagonResource, localFile, properties );
         try {
-            getReadRepository().getFile( repositoryResourcePath, -1, null, outputStream );
+            if ( prefetchedFile != null ) {
+                copyContent( prefetchedFile.content, outputStream );
+            } else if ( cachedContent != null ) {
+                try {
+                    copyContent( cachedContent, outputStream );
+                } catch ( IOException e ) {
+                    // the cached content became unreadable, it is downloaded instead
+                    fireTransferDebug( "failed to read the cached content of " + repositoryResourcePath + ": " + e.getMessage() );
+                    try {
+                        cachedContent.close();
+                    } catch ( IOException ignored ) {
+                    }
+                    cachedContent = null;
+                    if ( outputStream.isStarted() ) {
+                        // the listeners saw the abandoned transfer start, so the download is reported as a new one
+                        fireTransferError( wagonResource, e, TransferEvent.REQUEST_GET );
+                        fireGetInitiated( wagonResource, localFile );
+                    }
+                    outputStream.close();
+                    outputStream = new GetOutputStream( wagonResource, localFile, properties );
+                    getFileContent( repositoryResourcePath, wagonResource.getName(), properties, outputStream );
+                }
+            } else {
+                getFileContent( repositoryResourcePath, wagonResource.getName(), properties, outputStream );
+            }
+            outputStream.finish();
+            if ( prefetchedFile == null && cachedContent == null ) {
+                metrics.addBytesReceived( outputStream.getCount() );
+            }
         } catch ( SVNException e ) {
             fireTransferError( wagonResource, e, TransferEvent.REQUEST_GET );
             throw e;
+        } catch ( IOException e ) {
+            fireTransferError( wagonResource, e, TransferEvent.REQUEST_GET );
+            throw new TransferFailedException( e.getMessage(), e );
+        } finally {
+            try {
+                outputStream.close();
+            } catch ( IOException ignored ) {
+            }
+            if ( cachedContent != null ) {
+                try {
+                    cachedContent.close();
+                } catch ( IOException ignored ) {
+                }
+            }
+            if ( prefetchedFile != null ) {
+                prefetchedFile.content.delete();
+            }
+        }
+        wagonResource.setContentLength( outputStream.getCount() );
+        wagonResource.setLastModified( getLastModified( properties ) );
+        if ( blobCache != null && cachedContent == null && properties.getStringValue( SVNProperty.CHECKSUM ) != null ) {
+            long committedRevision = getCommittedRevision( properties );
+            long[] revisions = readRevision < 0 || readRevision == committedRevision
+                    ? new long[] { committedRevision } : new long[] { committedRevision, readRevision };
+            try {
+                blobCache.putContent( getCacheUrl( repositoryResourcePath ), revisions,
+                        properties.getStringValue( SVNProperty.CHECKSUM ), getLastModified( properties ), localFile );
+            } catch ( IOException e ) {
+                fireTransferDebug( "failed to cache " + repositoryResourcePath + ": " + e.getMessage() );
+            }
+        }
+        if ( baseContentStore != null && getCommittedRevision( properties ) >= 0 ) {
+            try {
+                baseContentStore.putContent( repositoryResourcePath, getCommittedRevision( properties ), localFile );
+            } catch ( IOException e ) {
+                fireTransferDebug( "failed to store the delta base for " + repositoryResourcePath + ": " + e.getMessage() );
+            }
+        }
+        fireGetCompleted( wagonResource, localFile );
+    }
+
+    /**
+     * Copies the content of the file written during the current write session from its local file, so that the write
+     * session does not have to be committed.
+     * <p/>
+     * The time of the put operation is reported as the last modification time.
+     *
+     * @param stagedFile the put operation
+     * @param localFile the local file to copy the content to
+     * @param wagonResource the wagon resource
+     *
+     * @throws TransferFailedException if the content cannot be copied
+     */
+    private void getStagedInternal( WriteOperation stagedFile, File localFile, Resource wagonResource ) throws TransferFailedException {
+        fireGetInitiated( wagonResource, localFile );
+        if ( !localFile.getParentFile().exists() && !localFile.getParentFile().mkdirs() ) {
+            throw new TransferFailedException( "failed to create " + localFile.getParentFile() );
+        }
+        SVNProperties properties = new SVNProperties();
+        properties.put( SVNProperty.COMMITTED_DATE, SVNDate.formatDate( new Date( stagedFile.writeTime ) ) );
+        GetOutputStream outputStream = new GetOutputStream( wagonResource, localFile, properties );
+        try {
+            copyContent( stagedFile.localFile, outputStream );
+            outputStream.finish();
+        } catch ( IOException e ) {
+            fireTransferError( wagonResource, e, TransferEvent.REQUEST_GET );
+            throw new TransferFailedException( e.getMessage(), e );
         } finally {
             try {
                 outputStream.close();
             } catch ( IOException ignored ) {
             }
         }
-        postProcessListeners( wagonResource, localFile, TransferEvent.REQUEST_GET );
-        fireGetCompleted( wagonResource, localFile );
+        wagonResource.setContentLength( outputStream.getCount() );
+        wagonResource.setLastModified( getLastModified( properties ) );
+        fireGetCompleted( wagonResource, localFile );
+    }
+
+    /**
+     * Opens the cached content of the specified file at the pinned read revision.
+     * <p/>
+     * If the file revision is already indexed then nothing is requested from the repository and the specified
+     * properties are filled with the last modification time only, otherwise the file properties are requested to find
+     * out the content checksum. The content is opened and locked right away, so a content evicted by another process
+     * in the meantime is treated as not cached, and the opened content is not evicted while it is read.
+     *
+     * @param repositoryResourcePath the resource path relative to the Subversion repository root
+     * @param repositoryResourceName the resource name relative to the wagon repository root
+     * @param properties the properties to fill
+     *
+     * @return the stream of the cached content or {@code null} if the content is not cached
+     *
+     * @throws ResourceDoesNotExistException if the resource does not exist or is not a file
+     * @throws SVNException if an SVN error occurred
+     */
+    private InputStream getCachedContent( String repositoryResourcePath, String repositoryResourceName, SVNProperties properties ) throws ResourceDoesNotExistException, SVNException {
+        String[] cacheEntry = null;
+        try {
+            cacheEntry = blobCache.getEntry( getCacheUrl( repositoryResourcePath ), readRevision );
+        } catch ( IOException e ) {
+            fireTransferDebug( "failed to read the cache index: " + e.getMessage() );
+        }
+        if ( cacheEntry != null ) {
+            InputStream cachedContent = openCachedContent( cacheEntry[ 0 ] );
+            if ( cachedContent != null ) {
+                properties.put( SVNProperty.COMMITTED_DATE, SVNDate.formatDate( new Date( Long.parseLong( cacheEntry[ 1 ] ) ) ) );
+                return cachedContent;
+            }
+        }
+        getFile( repositoryResourcePath, repositoryResourceName, properties, null );
+        String checksum = properties.getStringValue( SVNProperty.CHECKSUM );
+        return checksum == null ? null : openCachedContent( checksum );
+    }
+
+    /**
+     * Opens the cached content with the specified checksum.
+     *
+     * @param checksum the content checksum
+     *
+     * @return the stream of the cached content or {@code null} if the content is not cached
+     */
+    private InputStream openCachedContent( String checksum ) {
+        try {
+            return blobCache.openContent( checksum );
+        } catch ( IOException e ) {
+            fireTransferDebug( "failed to open the cached content " + checksum + ": " + e.getMessage() );
+            return null;
+        }
+    }
+
+    /**
+     * Requests the content of the specified file at the read revision.
+     * <p/>
+     * If the specified properties were already requested from the repository then only the content is requested,
+     * otherwise the properties are requested in the same request.
+     *
+     * @param repositoryResourcePath the resource path relative to the Subversion repository root
+     * @param repositoryResourceName the resource name relative to the wagon repository root
+     * @param properties the properties to fill
+     * @param outputStream the stream to write the content to
+     *
+     * @throws ResourceDoesNotExistException if the resource does not exist or is not a file
+     * @throws SVNException if an SVN error occurred
+     */
+    private void getFileContent( String repositoryResourcePath, String repositoryResourceName, SVNProperties properties, OutputStream outputStream ) throws ResourceDoesNotExistException, SVNException {
+        if ( properties.getStringValue( SVNProperty.CHECKSUM ) == null ) {
+            getFile( repositoryResourcePath, repositoryResourceName, properties, outputStream );
+            return;
+        }
+        long startTime = System.nanoTime();
+        try {
+            getReadRepository().getFile( repositoryResourcePath, readRevision, null, outputStream );
+        } finally {
+            metrics.record( SVNWagonMetrics.Call.GET_FILE, startTime );
+        }
+    }
+
+    /**
+     * Returns the URL that identifies the specified path in the downloaded file cache.
+     *
+     * @param repositoryPath the path relative to the Subversion repository root
+     *
+     * @return the cache URL
+     */
+    private String getCacheUrl( String repositoryPath ) {
+        return svnRepositoryRoot.toString() + '/' + repositoryPath;
+    }
+
+    private static void copyContent( File file, OutputStream outputStream ) throws IOException {
+        FileInputStream inputStream = new FileInputStream( file );
+        try {
+            copyContent( inputStream, outputStream );
+        } finally {
+            inputStream.close();
+        }
+    }
+
+    private static void copyContent( InputStream inputStream, OutputStream outputStream ) throws IOException {
+        byte[] buffer = new byte[ GET_BUFFER_SIZE ];
+        int count;
+        while ( ( count = inputStream.read( buffer ) ) >= 0 ) {
+            outputStream.write( buffer, 0, count );
+        }
+    }
+
+    /**
+     * Copies the specified file into the staging directory, notifying the transfer listeners, and schedules the
+     * staged copy to be sent to the repository in the background.
+     * <p/>
+     * The failures are recorded so that the write session is not committed.
+     *
+     * @param localFile the local file
+     * @param repositoryResourceName the resource name relative to the wagon repository root
+     *
+     * @throws TransferFailedException if the file cannot be staged or some previously staged file failed to be sent
+     * @throws AuthorizationException if the authorization failed
+     */
+    private void putWriteBehind( File localFile, String repositoryResourceName ) throws TransferFailedException, AuthorizationException {
+        checkWriteBehindFailure();
+        try {
+            putWriteBehindInternal( localFile, getResourcePath( repositoryResourceName ), new Resource( repositoryResourceName ) );
+        } catch ( IOException e ) {
+            writeBehindFailedResourceName = repositoryResourceName;
+            writeBehindFailure = e;
+            throw new TransferFailedException( e.getMessage(), e );
+        } catch ( SVNAuthenticationException e ) {
+            writeBehindFailedResourceName = repositoryResourceName;
+            writeBehindFailure = e;
+            throw new AuthorizationException( e.getMessage(), e );
+        } catch ( SVNException e ) {
+            writeBehindFailedResourceName = repositoryResourceName;
+            writeBehindFailure = e;
+            invalidateRepositoryRoot( e );
+            throw new TransferFailedException( e.getMessage(), e );
+        }
+    }
+
+    private void putWriteBehindInternal( File localFile, final String repositoryResourcePath, final Resource wagonResource ) throws IOException {
+        if ( writeBehindExecutor == null ) {
+            writeBehindDirectory = File.createTempFile( "maven-svn-wagon", ".staging" );
+            if ( !writeBehindDirectory.delete() || !writeBehindDirectory.mkdir() ) {
+                throw new IOException( "failed to create " + writeBehindDirectory );
+            }
+            writeBehindExecutor = Executors.newSingleThreadExecutor( new ThreadFactory() {
+                public Thread newThread( Runnable runnable ) {
+                    Thread thread = new Thread( runnable, "maven-svn-wagon-write-behind" );
+                    thread.setDaemon( true );
+                    writeBehindThread = thread;
+                    return thread;
+                }
+            } );
+        }
+        final File stagedFile = File.createTempFile( "staged", ".tmp", writeBehindDirectory );
+        firePutInitiated( wagonResource, localFile );
+        wagonResource.setContentLength( localFile.length() );
+        wagonResource.setLastModified( localFile.lastModified() );
+        firePutStarted( wagonResource, localFile );
+        PutInputStream inputStream = new PutInputStream( wagonResource, localFile, true, null );
+        try {
+            OutputStream outputStream = new FileOutputStream( stagedFile );
+            try {
+                byte[] buffer = new byte[ PUT_BUFFER_SIZE ];
+                int count;
+                while ( ( count = inputStream.read( buffer ) ) >= 0 ) {
+                    outputStream.write( buffer, 0, count );
+                }
+            } finally {
+                outputStream.close();
+            }
+        } catch ( IOException e ) {
+            fireTransferError( wagonResource, e, TransferEvent.REQUEST_PUT );
+            throw e;
+        } finally {
+            inputStream.close();
+        }
+        stagedFile.setLastModified( localFile.lastModified() );
+        firePutCompleted( wagonResource, localFile );
+        writeBehindTask = writeBehindExecutor.submit( new Runnable() {
+            public void run() {
+                if ( writeBehindFailure != null ) {
+                    return;
+                }
+                putEventsSuppressed = true;
+                try {
+                    putFileInternal( stagedFile, repositoryResourcePath, wagonResource, true );
+                } catch ( final Exception e ) {
+                    // the put events are suppressed, so the error of this resource is reported separately
+                    writeBehindNotifications.add( new Runnable() {
+                        public void run() {
+                            fireTransferError( wagonResource, e, TransferEvent.REQUEST_PUT );
+                            if ( e instanceof SVNException ) {
+                                invalidateRepositoryRoot( ( SVNException ) e );
+                            }
+                        }
+                    } );
+                    writeBehindFailedResourceName = wagonResource.getName();
+                    writeBehindFailure = e;
+                } finally {
+                    putEventsSuppressed = false;
+                }
+            }
+        } );
+    }
+
+    /**
+     * Waits until all files scheduled by the write-behind mode are sent to the repository.
+     * <p/>
+     * If some file failed to be sent then the current write session is marked as failed, so it is not committed.
+     *
+     * @throws TransferFailedException if the current thread was interrupted
+     */
+    private void awaitWriteBehind() throws TransferFailedException {
+        if ( writeBehindTask != null ) {
+            try {
+                writeBehindTask.get();
+            } catch ( InterruptedException e ) {
+                Thread.currentThread().interrupt();
+                throw new TransferFailedException( "interrupted while waiting for the pending writes", e );
+            } catch ( ExecutionException e ) {
+                // the task records the exceptions, only the errors such as OutOfMemoryError escape it
+                if ( e.getCause() instanceof Error ) {
+                    throw ( Error ) e.getCause();
+                }
+                throw new AssertionError( e );
+            }
+            writeBehindTask = null;
+        }
+        deliverWriteBehindNotifications();
+        if ( writeBehindFailure != null ) {
+            writeSuccessful = false;
+        }
+    }
+
+    /**
+     * Throws the exception if some file scheduled by the write-behind mode failed to be sent to the repository.
+     *
+     * @throws TransferFailedException if some write-behind operation failed
+     */
+    private void checkWriteBehindFailure() throws TransferFailedException {
+        deliverWriteBehindNotifications();
+        Exception failure = writeBehindFailure;
+        if ( failure != null ) {
+            throw new TransferFailedException( getWriteBehindFailureMessage(), failure );
+        }
+    }
+
+    /**
+     * Returns the message describing the first write-behind failure, including the name of the failed resource.
+     *
+     * @return the failure message
+     */
+    private String getWriteBehindFailureMessage() {
+        return "failed to write behind " + writeBehindFailedResourceName + ": " + writeBehindFailure.getMessage();
+    }
+
+    /**
+     * Delivers the listener notifications raised by the write-behind tasks so far.
+     */
+    private void deliverWriteBehindNotifications() {
+        for ( Runnable notification = writeBehindNotifications.poll(); notification != null; notification = writeBehindNotifications.poll() ) {
+            notification.run();
+        }
+    }
+
+    @Override
+    protected void fireTransferDebug( final String message ) {
+        if ( Thread.currentThread() == writeBehindThread ) {
+            writeBehindNotifications.add( new Runnable() {
+                public void run() {
+                    SVNWagon.super.fireTransferDebug( message );
+                }
+            } );
+        } else {
+            super.fireTransferDebug( message );
+        }
+    }
+
+    @Override
+    protected void fireSessionDebug( final String message ) {
+        if ( Thread.currentThread() == writeBehindThread ) {
+            writeBehindNotifications.add( new Runnable() {
+                public void run() {
+                    SVNWagon.super.fireSessionDebug( message );
+                }
+            } );
+        } else {
+            super.fireSessionDebug( message );
+        }
     }
 
-    private void putFileInternal( File localFile, String repositoryResourcePath, Resource wagonResource ) throws TransferFailedException, SVNException, FileNotFoundException {
+    /**
+     * Writes the specified local file to the repository in the current write session.
+     * <p/>
+     * Unless the local file is owned by the wagon, the content is copied into the write journal directory while it is
+     * read, so that the write session can be replayed after the caller deleted or changed the file.
+     *
+     * @param localFile the local file
+     * @param repositoryResourcePath the resource path relative to the Subversion repository root
+     * @param wagonResource the resource that the transfer listeners are notified about
+     * @param localFileOwned {@code true} if the local file is owned by the wagon and kept until the connection is closed
+     *
+     * @throws TransferFailedException if the resource path exists and is not a file
+     * @throws SVNException if an SVN error occurred
+     * @throws FileNotFoundException if the local file does not exist
+     */
+    private void putFileInternal( File localFile, String repositoryResourcePath, Resource wagonResource, boolean localFileOwned ) throws TransferFailedException, SVNException, FileNotFoundException {
         if ( repositoryResourcePath.startsWith( "/" ) ) {
             throw new AssertionError( "unexpected repository path: " + repositoryResourcePath );
         }
+        discardPrefetchedFile( repositoryResourcePath );
+        int lastSlash = repositoryResourcePath.lastIndexOf( '/' );
+        String repositoryDirectoryPath = lastSlash < 0 ? "" : repositoryResourcePath.substring( 0, lastSlash );
+        if ( isCopied( repositoryResourcePath ) ) {
+            commitWriteSession();
+        }
+        splitWriteSession( repositoryDirectoryPath );
         ISVNEditor editor = getWriteEditor( repositoryResourcePath );
-        SVNNodeKind repositoryResourceKind = getReadRepository().checkPath( repositoryResourcePath, -1 );
+        openDirectoriesInternal( editor, repositoryDirectoryPath );
+        SVNNodeKind repositoryResourceKind = checkPath( repositoryResourcePath, -1 );
         boolean repositoryResourceExists;
         if ( SVNNodeKind.FILE.equals( repositoryResourceKind ) ) {
             repositoryResourceExists = true;
@@ -543,30 +2944,157 @@ public class SVNWagon extends AbstractWagon {
         } else {
             throw new TransferFailedException( repositoryResourcePath + " exists and is not a file" );
         }
-        firePutInitiated( wagonResource, localFile );
+        long baseRevision = -1;
+        File baseContent = null;
+        String baseChecksum = null;
+        boolean baseRevisionVerified = false;
+        long storedRevision = baseContentStore == null ? -1 : baseContentStore.getRevision( repositoryResourcePath );
+        if ( repositoryResourceExists && storedRevision >= 0
+                && !addedEntries.containsKey( repositoryResourcePath ) && !changedEntries.contains( repositoryResourcePath ) ) {
+            String remoteTreeRelativePath = getRemoteTreeRelativePath( repositoryResourcePath );
+            long revision = remoteTreeRelativePath == null ? -1 : remoteTree.getRevision( remoteTreeRelativePath );
+            baseRevisionVerified = revision >= 0;
+            if ( !baseRevisionVerified && replayingWriteSession ) {
+                // the replayed write session conflicted with a concurrent commit, so the revision is requested
+                revision = getEntry( repositoryResourcePath, -1 ).getRevision();
+                baseRevisionVerified = true;
+            } else if ( !baseRevisionVerified ) {
+                // the revision is assumed to be current, the commit editor rejects the base if it is not
+                SVNDirEntry entry = readRevision < 0 ? null : metadataCache.getEntry( repositoryResourcePath, readRevision );
+                revision = entry == null ? storedRevision : entry.getRevision();
+            }
+            baseContent = baseContentStore.getContent( repositoryResourcePath, revision );
+            if ( baseContent != null ) {
+                try {
+                    baseChecksum = BaseContentStore.getChecksum( baseContent );
+                    baseRevision = revision;
+                } catch ( IOException e ) {
+                    fireTransferDebug( "failed to read the delta base for " + repositoryResourcePath + ": " + e.getMessage() );
+                    baseContent = null;
+                }
+            }
+        }
+        ContentIndex index = dedupIndexDirectory != null && !repositoryResourceExists && !addedEntries.containsKey( repositoryResourcePath )
+                ? getContentIndex() : null;
+        if ( !putEventsSuppressed ) {
+            firePutInitiated( wagonResource, localFile );
+        }
         wagonResource.setContentLength( localFile.length() );
         wagonResource.setLastModified( localFile.lastModified() );
-        firePutStarted( wagonResource, localFile );
+        if ( !putEventsSuppressed ) {
+            firePutStarted( wagonResource, localFile );
+        }
         SVNDeltaGenerator deltaGenerator = new SVNDeltaGenerator();
-        FileInputStream inputStream = new FileInputStream( localFile );
+        PutInputStream inputStream = new PutInputStream( wagonResource, localFile, !putEventsSuppressed, localFileOwned ? null : createWriteJournalFile() );
+        PutInputStream journalStream = inputStream;
         try {
-            if ( repositoryResourceExists || addedEntries.contains( repositoryResourcePath ) ) {
+            String[] duplicate = null;
+            String localChecksum = null;
+            if ( index != null ) {
+                // the transfer listeners are notified while the checksum is computed, so a copied file is read only once
+                try {
+                    localChecksum = getChecksum( inputStream );
+                } catch ( IOException e ) {
+                    if ( !putEventsSuppressed ) {
+                        fireTransferError( wagonResource, e, TransferEvent.REQUEST_PUT );
+                    }
+                    throw new TransferFailedException( e.getMessage(), e );
+                }
+                duplicate = index.getEntry( localChecksum );
+                if ( duplicate != null ) {
+                    SVNDirEntry duplicateEntry = getEntry( duplicate[ 0 ], Long.parseLong( duplicate[ 1 ] ) );
+                    if ( duplicateEntry == null || duplicateEntry.getSize() != localFile.length() ) {
+                        duplicate = null;
+                    }
+                }
+                if ( duplicate == null ) {
+                    // the content is sent, the local file is read again without notifying the transfer listeners
+                    try {
+                        inputStream.close();
+                    } catch ( IOException ignored ) {
+                    }
+                    inputStream = new PutInputStream( wagonResource, localFile, false, null );
+                }
+            }
+            final PutInputStream progressStream = inputStream;
+            if ( repositoryResourceExists || addedEntries.containsKey( repositoryResourcePath ) ) {
                 writeAttempted = true;
-                editor.openFile( repositoryResourcePath, -1 );
+                if ( !addedEntries.containsKey( repositoryResourcePath ) ) {
+                    changedEntries.add( repositoryResourcePath );
+                }
+                try {
+                    editor.openFile( repositoryResourcePath, baseRevision );
+                } catch ( SVNException e ) {
+                    if ( baseContent == null || baseRevisionVerified || !isConflict( e ) ) {
+                        throw e;
+                    }
+                    fireTransferDebug( "the delta base for " + repositoryResourcePath + " is out of date, sending the full content" );
+                    baseContent = null;
+                    baseChecksum = null;
+                    editor.openFile( repositoryResourcePath, -1 );
+                }
             } else {
                 writeAttempted = true;
-                addedEntries.add( repositoryResourcePath );
-                editor.addFile( repositoryResourcePath, null, -1 );
+                addedEntries.put( repositoryResourcePath, SVNNodeKind.FILE );
+                if ( duplicate == null ) {
+                    editor.addFile( repositoryResourcePath, null, -1 );
+                } else {
+                    editor.addFile( repositoryResourcePath, '/' + duplicate[ 0 ], Long.parseLong( duplicate[ 1 ] ) );
+                    fireTransferDebug( repositoryResourcePath + " is added as a copy of " + duplicate[ 0 ] + "@" + duplicate[ 1 ] );
+                }
                 Map<String, String> autoProperties = getAutoProperties( repositoryResourcePath );
                 for ( Map.Entry<String, String> entry : autoProperties.entrySet() ) {
                     editor.changeFileProperty( repositoryResourcePath, entry.getKey(), SVNPropertyValue.create( entry.getValue() ) );
                 }
             }
-            editor.applyTextDelta( repositoryResourcePath, null );
-            String checksum = deltaGenerator.sendDelta( repositoryResourcePath, inputStream, editor, true );
+            String checksum;
+            if ( duplicate != null ) {
+                checksum = localChecksum;
+            } else if ( pipelinedPut && localFile.length() >= PIPELINED_PUT_MIN_LENGTH ) {
+                editor.applyTextDelta( repositoryResourcePath, baseChecksum );
+                try {
+                    checksum = getDeltaPipeline().sendDelta( repositoryResourcePath, baseContent, localFile, new CountingDeltaConsumer( editor ), new DeltaPipeline.ProgressListener() {
+                        public void chunkRead( byte[] chunk ) {
+                            progressStream.notifyRead( chunk, chunk.length );
+                        }
+                    } );
+                } catch ( IOException e ) {
+                    if ( !putEventsSuppressed ) {
+                        fireTransferError( wagonResource, e, TransferEvent.REQUEST_PUT );
+                    }
+                    throw new TransferFailedException( e.getMessage(), e );
+                }
+            } else if ( baseContent == null ) {
+                editor.applyTextDelta( repositoryResourcePath, null );
+                checksum = deltaGenerator.sendDelta( repositoryResourcePath, inputStream, new CountingDeltaConsumer( editor ), true );
+            } else {
+                FileInputStream baseInputStream = new FileInputStream( baseContent );
+                try {
+                    editor.applyTextDelta( repositoryResourcePath, baseChecksum );
+                    checksum = deltaGenerator.sendDelta( repositoryResourcePath, baseInputStream, 0, inputStream, new CountingDeltaConsumer( editor ), true );
+                } finally {
+                    try {
+                        baseInputStream.close();
+                    } catch ( IOException ignored ) {
+                    }
+                }
+            }
             editor.closeFile( repositoryResourcePath, checksum );
+            writtenFileCount++;
+            writtenByteCount += localFile.length();
+            File journalFile = journalStream.getCopy( wagonResource.getContentLength() );
+            if ( journalFile == null ) {
+                journalFile = localFile;
+            } else {
+                journalFile.setLastModified( localFile.lastModified() );
+            }
+            WriteOperation operation = new WriteOperation( WriteOperation.Kind.PUT_FILE, repositoryResourcePath, journalFile, wagonResource.getName() );
+            writeJournal.add( operation );
+            stagedFiles.put( repositoryResourcePath, operation );
         } catch ( SVNException e ) {
-            fireTransferError( wagonResource, e, TransferEvent.REQUEST_PUT );
+            if ( !putEventsSuppressed ) {
+                fireTransferError( wagonResource, e, TransferEvent.REQUEST_PUT );
+            }
             throw e;
         } finally {
             try {
@@ -574,24 +3102,573 @@ public class SVNWagon extends AbstractWagon {
             } catch ( IOException ignored ) {
             }
         }
-        postProcessListeners( wagonResource, localFile, TransferEvent.REQUEST_PUT );
-        firePutCompleted( wagonResource, localFile );
+        if ( !putEventsSuppressed ) {
+            firePutCompleted( wagonResource, localFile );
+        }
+    }
+
+    /**
+     * Creates a new file in the write journal directory.
+     *
+     * @return the created file, or {@code null} if the commits are not retried or the file cannot be created
+     */
+    private File createWriteJournalFile() {
+        if ( commitRetryCount <= 0 ) {
+            return null;
+        }
+        try {
+            if ( writeJournalDirectory == null ) {
+                File directory = File.createTempFile( "maven-svn-wagon", ".journal" );
+                if ( !directory.delete() || !directory.mkdir() ) {
+                    throw new IOException( "failed to create " + directory );
+                }
+                writeJournalDirectory = directory;
+            }
+            return File.createTempFile( "put", ".tmp", writeJournalDirectory );
+        } catch ( IOException e ) {
+            fireTransferDebug( "failed to create the write journal file: " + e.getMessage() );
+            return null;
+        }
+    }
+
+    /**
+     * Deletes the write journal directory with the copies of the written files.
+     */
+    private void deleteWriteJournalDirectory() {
+        if ( writeJournalDirectory != null ) {
+            File[] journalFiles = writeJournalDirectory.listFiles();
+            if ( journalFiles != null ) {
+                for ( File journalFile : journalFiles ) {
+                    journalFile.delete();
+                }
+            }
+            writeJournalDirectory.delete();
+            writeJournalDirectory = null;
+        }
+    }
+
+    /**
+     * Reads the specified stream to the end and returns the hex-encoded MD5 checksum of the read content.
+     *
+     * @param inputStream the stream
+     *
+     * @return the checksum
+     *
+     * @throws IOException if an I/O error occurred
+     */
+    private static String getChecksum( InputStream inputStream ) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance( "MD5" );
+        } catch ( NoSuchAlgorithmException e ) {
+            throw new AssertionError( e );
+        }
+        byte[] buffer = new byte[ PUT_BUFFER_SIZE ];
+        int count;
+        while ( ( count = inputStream.read( buffer ) ) >= 0 ) {
+            digest.update( buffer, 0, count );
+        }
+        return BaseContentStore.toHex( digest.digest() );
+    }
+
+    /**
+     * Returns the delta pipeline, creating it and its executor at the first call during the connection.
+     *
+     * @return the delta pipeline
+     */
+    private DeltaPipeline getDeltaPipeline() {
+        if ( deltaPipeline == null ) {
+            deltaPipelineExecutor = Executors.newFixedThreadPool( 2, new ThreadFactory() {
+                public Thread newThread( Runnable runnable ) {
+                    Thread thread = new Thread( runnable, "maven-svn-wagon-delta-pipeline" );
+                    thread.setDaemon( true );
+                    return thread;
+                }
+            } );
+            deltaPipeline = new DeltaPipeline( deltaPipelineExecutor );
+        }
+        return deltaPipeline;
+    }
+
+    /**
+     * Copies the specified file or directory in the current write session.
+     *
+     * @param sourcePath the source path relative to the Subversion repository root
+     * @param sourceRevision the source revision
+     * @param sourceKind the source node kind
+     * @param destinationPath the destination path relative to the Subversion repository root
+     *
+     * @throws TransferFailedException if the destination exists and cannot be replaced
+     * @throws SVNException if an SVN error occurred
+     */
+    private void copyInternal( String sourcePath, long sourceRevision, SVNNodeKind sourceKind, String destinationPath ) throws TransferFailedException, SVNException {
+        discardPrefetchedFile( destinationPath );
+        int lastSlash = destinationPath.lastIndexOf( '/' );
+        String repositoryDirectoryPath = lastSlash < 0 ? "" : destinationPath.substring( 0, lastSlash );
+        splitWriteSession( repositoryDirectoryPath );
+        ISVNEditor editor = getWriteEditor( destinationPath );
+        openDirectoriesInternal( editor, repositoryDirectoryPath );
+        SVNNodeKind destinationKind = checkPath( destinationPath, -1 );
+        if ( SVNNodeKind.FILE.equals( destinationKind ) && SVNNodeKind.FILE.equals( sourceKind ) ) {
+            if ( !changedEntries.contains( destinationPath ) ) {
+                deleteEntryInternal( editor, destinationPath );
+            }
+        } else if ( !SVNNodeKind.NONE.equals( destinationKind ) ) {
+            throw new TransferFailedException( destinationPath + " already exists" );
+        }
+        writeAttempted = true;
+        addedEntries.put( destinationPath, sourceKind );
+        if ( SVNNodeKind.DIR.equals( sourceKind ) ) {
+            editor.addDir( destinationPath, '/' + sourcePath, sourceRevision );
+            editor.closeDir();
+            copiedDirectories.add( destinationPath );
+        } else {
+            editor.addFile( destinationPath, '/' + sourcePath, sourceRevision );
+            editor.closeFile( destinationPath, null );
+        }
+        writtenFileCount++;
+        writeJournal.add( new WriteOperation( destinationPath, sourcePath, sourceRevision, sourceKind ) );
+        fireSessionDebug( "copied " + sourcePath + "@" + sourceRevision + " to " + destinationPath );
+    }
+
+    /**
+     * Checks whether the content of the specified local file is the same as the content of the remote file according
+     * to the remote tree snapshot.
+     *
+     * @param localFile the local file
+     * @param repositoryResourcePath the resource path relative to the Subversion repository root
+     *
+     * @return {@code true} if the file is known to be unchanged
+     *
+     * @throws TransferFailedException if the local file cannot be read
+     */
+    private boolean isUnchanged( File localFile, String repositoryResourcePath ) throws TransferFailedException {
+        String remoteTreeRelativePath = getRemoteTreeRelativePath( repositoryResourcePath );
+        String remoteChecksum = remoteTreeRelativePath == null ? null : remoteTree.getChecksum( remoteTreeRelativePath );
+        if ( remoteChecksum == null || isWritten( repositoryResourcePath ) ) {
+            return false;
+        }
+        try {
+            return remoteChecksum.equals( BaseContentStore.getChecksum( localFile ) );
+        } catch ( IOException e ) {
+            throw new TransferFailedException( e.getMessage(), e );
+        }
     }
 
     private void putDirectoryInternal( File localDirectory, String repositoryDirectoryPath, Resource wagonResource ) throws TransferFailedException, SVNException, FileNotFoundException {
+        if ( isCopied( repositoryDirectoryPath ) ) {
+            commitWriteSession();
+        }
+        splitWriteSession( repositoryDirectoryPath );
         ISVNEditor editor = getWriteEditor( repositoryDirectoryPath );
-        openDirectoryInternal( editor, repositoryDirectoryPath );
+        openDirectoriesInternal( editor, repositoryDirectoryPath );
         File[] localDirectoryContents = localDirectory.listFiles();
+        Arrays.sort( localDirectoryContents );
+        String remoteTreeRelativePath = getRemoteTreeRelativePath( repositoryDirectoryPath );
+        if ( prunedDirectoryPut && remoteTreeRelativePath != null ) {
+            Set<String> localNames = new HashSet<String>();
+            for ( File file : localDirectoryContents ) {
+                localNames.add( file.getName() );
+            }
+            for ( String remoteName : remoteTree.getChildren( remoteTreeRelativePath ) ) {
+                if ( !localNames.contains( remoteName ) ) {
+                    String repositoryPath = repositoryDirectoryPath.length() == 0 ? remoteName : repositoryDirectoryPath + '/' + remoteName;
+                    deleteEntryInternal( editor, repositoryPath );
+                }
+            }
+        }
+        // files go first so that the editor does not have to reopen this directory after the subdirectories
+        for ( File file : localDirectoryContents ) {
+            if ( !file.isDirectory() ) {
+                Resource wagonFileResource = new Resource( wagonResource.getName() + '/' + file.getName() );
+                String repositoryResourcePath = getResourcePath( wagonFileResource.getName() );
+                if ( !incrementalDirectoryPut || !isUnchanged( file, repositoryResourcePath ) ) {
+                    putFileInternal( file, repositoryResourcePath, wagonFileResource, false );
+                }
+            }
+        }
         for ( File file : localDirectoryContents ) {
-            Resource wagonFileResource = new Resource( wagonResource.getName() + '/' + file.getName() );
-            String repositoryFilePath = getResourcePath( wagonFileResource.getName() );
             if ( file.isDirectory() ) {
-                putDirectoryInternal( file, repositoryFilePath, wagonFileResource );
+                Resource wagonFileResource = new Resource( wagonResource.getName() + '/' + file.getName() );
+                putDirectoryInternal( file, getResourcePath( wagonFileResource.getName() ), wagonFileResource );
+            }
+        }
+    }
+
+
+    /**
+     * The file that was downloaded by the prefetch operation.
+     */
+    private static class PrefetchedFile {
+
+        private final SVNNodeKind kind;
+
+        private final File content;
+
+        private final SVNProperties properties;
+
+
+        PrefetchedFile( SVNNodeKind kind, File content, SVNProperties properties ) {
+            this.kind = kind;
+            this.content = content;
+            this.properties = properties;
+        }
+
+    }
+
+    /**
+     * The write operation recorded in order to replay the write session after a commit conflict.
+     */
+    private static class WriteOperation {
+
+        enum Kind {
+            PUT_FILE, ADD_DIRECTORY, DELETE_ENTRY, COPY
+        }
+
+        private final Kind kind;
+
+        private final String repositoryPath;
+
+        private final File localFile;
+
+        private final String resourceName;
+
+        private final long length;
+
+        private final long lastModified;
+
+        private final long writeTime;
+
+        private final String copyFromPath;
+
+        private final long copyFromRevision;
+
+        private final SVNNodeKind copyFromKind;
+
+
+        WriteOperation( Kind kind, String repositoryPath, File localFile, String resourceName ) {
+            this.kind = kind;
+            this.repositoryPath = repositoryPath;
+            this.localFile = localFile;
+            this.resourceName = resourceName;
+            length = localFile == null ? -1 : localFile.length();
+            lastModified = localFile == null ? -1 : localFile.lastModified();
+            writeTime = System.currentTimeMillis();
+            copyFromPath = null;
+            copyFromRevision = -1;
+            copyFromKind = null;
+        }
+
+        WriteOperation( String repositoryPath, String copyFromPath, long copyFromRevision, SVNNodeKind copyFromKind ) {
+            kind = Kind.COPY;
+            this.repositoryPath = repositoryPath;
+            localFile = null;
+            resourceName = null;
+            length = -1;
+            lastModified = -1;
+            writeTime = System.currentTimeMillis();
+            this.copyFromPath = copyFromPath;
+            this.copyFromRevision = copyFromRevision;
+            this.copyFromKind = copyFromKind;
+        }
+
+    }
+
+    /**
+     * The input stream that reads the uploaded content from the local file and notifies the transfer listeners.
+     * <p/>
+     * The local file is read only once, the same bytes feed the delta generator that computes the content checksum,
+     * the transfer listeners that may compute their own checksums, and the copy the write session is replayed from.
+     */
+    private class PutInputStream extends FilterInputStream {
+
+        private final TransferEvent progressEvent;
+
+        private final File copy;
+
+        private OutputStream copyOutputStream;
+
+        private long copyLength;
+
+
+        PutInputStream( Resource wagonResource, File localFile, boolean notify, File copy ) throws FileNotFoundException {
+            super( new BufferedInputStream( new FileInputStream( localFile ), PUT_BUFFER_SIZE ) );
+            if ( notify ) {
+                progressEvent = new TransferEvent( SVNWagon.this, wagonResource, TransferEvent.TRANSFER_PROGRESS, TransferEvent.REQUEST_PUT );
+                progressEvent.setLocalFile( localFile );
+            } else {
+                progressEvent = null;
+            }
+            this.copy = copy;
+            if ( copy != null ) {
+                try {
+                    copyOutputStream = new BufferedOutputStream( new FileOutputStream( copy ), PUT_BUFFER_SIZE );
+                } catch ( FileNotFoundException e ) {
+                    copyLength = -1;
+                }
+            }
+        }
+
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if ( b >= 0 ) {
+                notifyRead( new byte[] { ( byte ) b }, 1 );
+            }
+            return b;
+        }
+
+        @Override
+        public int read( byte[] b, int off, int len ) throws IOException {
+            int count = super.read( b, off, len );
+            if ( count > 0 && ( progressEvent != null || copyOutputStream != null ) ) {
+                if ( off == 0 ) {
+                    notifyRead( b, count );
+                } else {
+                    byte[] progressBuffer = new byte[ count ];
+                    System.arraycopy( b, off, progressBuffer, 0, count );
+                    notifyRead( progressBuffer, count );
+                }
+            }
+            return count;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        @Override
+        public void close() throws IOException {
+            closeCopy();
+            super.close();
+        }
+
+
+        /**
+         * Notifies the transfer listeners about the content read from the local file by other means than this stream,
+         * and appends the content to the copy.
+         *
+         * @param buffer the read content
+         * @param length the length of the read content
+         */
+        void notifyRead( byte[] buffer, int length ) {
+            if ( progressEvent != null ) {
+                fireTransferProgress( progressEvent, buffer, length );
+            }
+            if ( copyOutputStream != null ) {
+                try {
+                    copyOutputStream.write( buffer, 0, length );
+                    copyLength += length;
+                } catch ( IOException e ) {
+                    // the write session is replayed from the local file
+                    closeCopy();
+                    copyLength = -1;
+                }
+            }
+        }
+
+        /**
+         * Completes the copy of the read content.
+         *
+         * @param length the length of the local file
+         *
+         * @return the copy, or {@code null} if no copy was requested, it failed, or not the whole file was read
+         */
+        File getCopy( long length ) {
+            closeCopy();
+            return copy != null && copyLength == length ? copy : null;
+        }
+
+        private void closeCopy() {
+            if ( copyOutputStream != null ) {
+                try {
+                    copyOutputStream.close();
+                } catch ( IOException e ) {
+                    copyLength = -1;
+                }
+                copyOutputStream = null;
+            }
+        }
+
+    }
+
+    /**
+     * The delta consumer that passes the delta windows to the editor and counts the sent delta bytes.
+     */
+    private class CountingDeltaConsumer implements ISVNDeltaConsumer {
+
+        private final ISVNDeltaConsumer consumer;
+
+
+        CountingDeltaConsumer( ISVNDeltaConsumer consumer ) {
+            this.consumer = consumer;
+        }
+
+
+        public void applyTextDelta( String path, String baseChecksum ) throws SVNException {
+            consumer.applyTextDelta( path, baseChecksum );
+        }
+
+        public OutputStream textDeltaChunk( String path, SVNDiffWindow diffWindow ) throws SVNException {
+            metrics.addBytesSent( diffWindow.getDataLength() );
+            return consumer.textDeltaChunk( path, diffWindow );
+        }
+
+        public void textDeltaEnd( String path ) throws SVNException {
+            consumer.textDeltaEnd( path );
+        }
+
+    }
+
+    /**
+     * The output stream that writes the downloaded content into the local file and notifies the transfer listeners.
+     * <p/>
+     * The beginning of the content is kept in memory, so if the whole content fits in the buffer then the transfer is
+     * reported as started only when the content length and the file properties are known. Otherwise the transfer is
+     * reported as started with the unknown content length as soon as the buffer overflows.
+     * <p/>
+     * The content is written into a temporary file next to the local file while its MD5 checksum is computed. When
+     * the whole content is received the checksum is verified against the repository checksum and the temporary file
+     * is renamed to the local file, so the local file is never left partially written.
+     */
+    private class GetOutputStream extends OutputStream {
+
+        private final Resource wagonResource;
+
+        private final File localFile;
+
+        private final SVNProperties properties;
+
+        private final TransferEvent progressEvent;
+
+        private final byte[] buffer = new byte[ GET_BUFFER_SIZE ];
+
+        private int bufferCount;
+
+        private final MessageDigest digest;
+
+        private File tempFile;
+
+        private OutputStream outputStream;
+
+        private long count;
+
+
+        GetOutputStream( Resource wagonResource, File localFile, SVNProperties properties ) {
+            this.wagonResource = wagonResource;
+            this.localFile = localFile;
+            this.properties = properties;
+            progressEvent = new TransferEvent( SVNWagon.this, wagonResource, TransferEvent.TRANSFER_PROGRESS, TransferEvent.REQUEST_GET );
+            progressEvent.setLocalFile( localFile );
+            try {
+                digest = MessageDigest.getInstance( "MD5" );
+            } catch ( NoSuchAlgorithmException e ) {
+                throw new AssertionError( e );
+            }
+        }
+
+
+        /**
+         * Returns the number of bytes written so far.
+         *
+         * @return the number of written bytes
+         */
+        long getCount() {
+            return count;
+        }
+
+        /**
+         * Checks whether the transfer was reported as started.
+         *
+         * @return {@code true} if the transfer listeners were notified about the transfer start
+         */
+        boolean isStarted() {
+            return outputStream != null;
+        }
+
+        /**
+         * Writes the buffered content, verifies the checksum and moves the content into the local file after the whole
+         * content was received.
+         *
+         * @throws IOException if an I/O error occurred or the checksum does not match
+         */
+        void finish() throws IOException {
+            if ( outputStream == null ) {
+                start( bufferCount );
+            }
+            outputStream.close();
+            String expectedChecksum = properties.getStringValue( SVNProperty.CHECKSUM );
+            String checksum = BaseContentStore.toHex( digest.digest() );
+            if ( expectedChecksum != null && !expectedChecksum.equals( checksum ) ) {
+                throw new IOException( "checksum mismatch for " + wagonResource.getName() + ": expected " + expectedChecksum + ", actual " + checksum );
+            }
+            // the rename replaces the existing local file atomically where the platform allows it
+            if ( !tempFile.renameTo( localFile ) && ( !localFile.delete() || !tempFile.renameTo( localFile ) ) ) {
+                throw new IOException( "failed to rename " + tempFile + " to " + localFile );
+            }
+            tempFile = null;
+        }
+
+        @Override
+        public void write( int b ) throws IOException {
+            write( new byte[] { ( byte ) b }, 0, 1 );
+        }
+
+        @Override
+        public void write( byte[] b, int off, int len ) throws IOException {
+            if ( outputStream == null ) {
+                if ( bufferCount + len <= buffer.length ) {
+                    System.arraycopy( b, off, buffer, bufferCount, len );
+                    bufferCount += len;
+                    return;
+                }
+                start( WagonConstants.UNKNOWN_LENGTH );
+            }
+            writeInternal( b, off, len );
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                if ( outputStream != null ) {
+                    outputStream.close();
+                }
+            } finally {
+                if ( tempFile != null ) {
+                    tempFile.delete();
+                    tempFile = null;
+                }
+            }
+        }
+
+
+        private void start( long contentLength ) throws IOException {
+            wagonResource.setContentLength( contentLength );
+            wagonResource.setLastModified( getLastModified( properties ) );
+            fireGetStarted( wagonResource, localFile );
+            tempFile = File.createTempFile( "download", ".tmp", localFile.getAbsoluteFile().getParentFile() );
+            outputStream = new BufferedOutputStream( new FileOutputStream( tempFile ), GET_BUFFER_SIZE );
+            writeInternal( buffer, 0, bufferCount );
+        }
+
+        private void writeInternal( byte[] b, int off, int len ) throws IOException {
+            if ( len == 0 ) {
+                return;
+            }
+            outputStream.write( b, off, len );
+            digest.update( b, off, len );
+            count += len;
+            if ( off == 0 ) {
+                fireTransferProgress( progressEvent, b, len );
             } else {
-                putFileInternal( file, repositoryFilePath, wagonFileResource );
+                byte[] progressBuffer = new byte[ len ];
+                System.arraycopy( b, off, progressBuffer, 0, len );
+                fireTransferProgress( progressEvent, progressBuffer, len );
             }
         }
-        closeDirectoryInternal( editor );
+
     }
 
 }
@@ -0,0 +1,258 @@
+/*-
+ * Copyright (c) 2009-2011, Oleg Estekhin
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the distribution.
+ *  * Neither the names of the copyright holders nor the names of their
+ *    contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ * DAMAGE.
+ */
+
+
+package oe.maven.wagon.providers.svn;
+
+import java.lang.management.ManagementFactory;
+import javax.management.JMException;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+
+/**
+ * The counters of the repository calls and the transferred bytes.
+ * <p/>
+ * Each wagon connection has its own metrics that also update the process-wide metrics published via JMX.
+ */
+class SVNWagonMetrics implements SVNWagonMetricsMBean {
+
+    /** The measured call types. */
+    enum Call {
+
+        LATEST_REVISION( "getLatestRevision" ),
+        CHECK_PATH( "checkPath" ),
+        INFO( "info" ),
+        GET_FILE( "getFile" ),
+        GET_DIR( "getDir" ),
+        STATUS( "status" ),
+        GET_COMMIT_EDITOR( "getCommitEditor" ),
+        COMMIT( "commit" ),
+        LOG( "log" ),
+        REPOSITORY_ROOT( "getRepositoryRoot" ),
+        REPOSITORY_UUID( "getRepositoryUUID" );
+
+        private final String name;
+
+        Call( String name ) {
+            this.name = name;
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+
+    }
+
+    /** The upper bounds of the latency histogram buckets in milliseconds, the last bucket is unbounded. */
+    private static final long[] BUCKET_BOUNDS = { 1L, 2L, 5L, 10L, 20L, 50L, 100L, 200L, 500L, 1000L, 2000L, 5000L, 10000L };
+
+    /** The JMX object name of the process-wide metrics. */
+    private static final String OBJECT_NAME = "oe.maven.wagon.providers.svn:type=SVNWagonMetrics";
+
+    private static SVNWagonMetrics processMetrics;
+
+
+    /** The metrics that are updated together with these metrics, or {@code null}. */
+    private final SVNWagonMetrics parent;
+
+    private final long[] callCounts = new long[ Call.values().length ];
+
+    private final long[] callTimes = new long[ Call.values().length ];
+
+    private final long[][] histograms = new long[ Call.values().length ][ BUCKET_BOUNDS.length + 1 ];
+
+    private long bytesSent;
+
+    private long bytesReceived;
+
+
+    /**
+     * Returns the process-wide metrics.
+     * <p/>
+     * The metrics are registered in the platform MBean server when they are requested for the first time. The failure
+     * to register the metrics is ignored, for example if they were already registered by the wagon loaded by another
+     * class loader.
+     *
+     * @return the process-wide metrics
+     */
+    static synchronized SVNWagonMetrics getProcessMetrics() {
+        if ( processMetrics == null ) {
+            processMetrics = new SVNWagonMetrics( null );
+            try {
+                ManagementFactory.getPlatformMBeanServer().registerMBean(
+                        new StandardMBean( processMetrics, SVNWagonMetricsMBean.class ), new ObjectName( OBJECT_NAME ) );
+            } catch ( JMException ignored ) {
+            }
+        }
+        return processMetrics;
+    }
+
+
+    /**
+     * Creates new metrics.
+     *
+     * @param parent the metrics that are updated together with these metrics, or {@code null}
+     */
+    SVNWagonMetrics( SVNWagonMetrics parent ) {
+        this.parent = parent;
+    }
+
+
+    /**
+     * Records the call that started at the specified time and has just finished.
+     *
+     * @param call the call type
+     * @param startTime the start time as returned by {@link System#nanoTime()}
+     */
+    void record( Call call, long startTime ) {
+        record( call.ordinal(), System.nanoTime() - startTime );
+    }
+
+    private synchronized void record( int call, long duration ) {
+        callCounts[ call ]++;
+        callTimes[ call ] += duration;
+        long millis = duration / 1000000L;
+        int bucket = 0;
+        while ( bucket < BUCKET_BOUNDS.length && millis >= BUCKET_BOUNDS[ bucket ] ) {
+            bucket++;
+        }
+        histograms[ call ][ bucket ]++;
+        if ( parent != null ) {
+            parent.record( call, duration );
+        }
+    }
+
+    /**
+     * Records the bytes sent to the repository.
+     *
+     * @param count the number of the bytes
+     */
+    synchronized void addBytesSent( long count ) {
+        bytesSent += count;
+        if ( parent != null ) {
+            parent.addBytesSent( count );
+        }
+    }
+
+    /**
+     * Records the bytes received from the repository.
+     *
+     * @param count the number of the bytes
+     */
+    synchronized void addBytesReceived( long count ) {
+        bytesReceived += count;
+        if ( parent != null ) {
+            parent.addBytesReceived( count );
+        }
+    }
+
+
+    public String[] getCallNames() {
+        Call[] calls = Call.values();
+        String[] names = new String[ calls.length ];
+        for ( int i = 0; i < calls.length; i++ ) {
+            names[ i ] = calls[ i ].toString();
+        }
+        return names;
+    }
+
+    public synchronized long[] getCallCounts() {
+        return callCounts.clone();
+    }
+
+    public synchronized long[] getCallTimes() {
+        long[] times = new long[ callTimes.length ];
+        for ( int i = 0; i < times.length; i++ ) {
+            times[ i ] = callTimes[ i ] / 1000000L;
+        }
+        return times;
+    }
+
+    public synchronized String[] getLatencyHistograms() {
+        String[] result = new String[ histograms.length ];
+        for ( int i = 0; i < result.length; i++ ) {
+            result[ i ] = formatHistogram( histograms[ i ] );
+        }
+        return result;
+    }
+
+    public synchronized long getBytesSent() {
+        return bytesSent;
+    }
+
+    public synchronized long getBytesReceived() {
+        return bytesReceived;
+    }
+
+    public synchronized String getSummary() {
+        StringBuilder summary = new StringBuilder();
+        Call[] calls = Call.values();
+        for ( int i = 0; i < calls.length; i++ ) {
+            if ( callCounts[ i ] > 0 ) {
+                summary.append( calls[ i ] ).append( ": " ).append( callCounts[ i ] ).append( " calls, " )
+                        .append( callTimes[ i ] / 1000000L ).append( " ms (" ).append( formatHistogram( histograms[ i ] ) ).append( "); " );
+            }
+        }
+        summary.append( "sent " ).append( bytesSent ).append( " bytes, received " ).append( bytesReceived ).append( " bytes" );
+        return summary.toString();
+    }
+
+    public synchronized void reset() {
+        for ( int i = 0; i < callCounts.length; i++ ) {
+            callCounts[ i ] = 0L;
+            callTimes[ i ] = 0L;
+            for ( int j = 0; j < histograms[ i ].length; j++ ) {
+                histograms[ i ][ j ] = 0L;
+            }
+        }
+        bytesSent = 0L;
+        bytesReceived = 0L;
+    }
+
+
+    private static String formatHistogram( long[] histogram ) {
+        StringBuilder result = new StringBuilder();
+        for ( int i = 0; i < histogram.length; i++ ) {
+            if ( histogram[ i ] > 0 ) {
+                if ( result.length() > 0 ) {
+                    result.append( ", " );
+                }
+                if ( i < BUCKET_BOUNDS.length ) {
+                    result.append( '<' ).append( BUCKET_BOUNDS[ i ] ).append( "ms" );
+                } else {
+                    result.append( ">=" ).append( BUCKET_BOUNDS[ BUCKET_BOUNDS.length - 1 ] ).append( "ms" );
+                }
+                result.append( ": " ).append( histogram[ i ] );
+            }
+        }
+        return result.toString();
+    }
+
+}
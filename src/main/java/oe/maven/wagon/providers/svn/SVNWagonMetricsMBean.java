@@ -0,0 +1,93 @@
+/*-
+ * Copyright (c) 2009-2011, Oleg Estekhin
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  * Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ *  * Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the distribution.
+ *  * Neither the names of the copyright holders nor the names of their
+ *    contributors may be used to endorse or promote products derived
+ *    from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE REGENTS OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT
+ * LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY
+ * OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH
+ * DAMAGE.
+ */
+
+
+package oe.maven.wagon.providers.svn;
+
+/**
+ * The management interface of the wagon metrics.
+ * <p/>
+ * The metrics of all wagon connections in the process are published under the
+ * {@code oe.maven.wagon.providers.svn:type=SVNWagonMetrics} object name.
+ */
+public interface SVNWagonMetricsMBean {
+
+    /**
+     * Returns the names of the measured call types.
+     *
+     * @return the call type names
+     */
+    String[] getCallNames();
+
+    /**
+     * Returns the number of the calls of each type in the order of {@link #getCallNames()}.
+     *
+     * @return the call counts
+     */
+    long[] getCallCounts();
+
+    /**
+     * Returns the total duration of the calls of each type in milliseconds in the order of {@link #getCallNames()}.
+     *
+     * @return the call durations
+     */
+    long[] getCallTimes();
+
+    /**
+     * Returns the latency histogram of each call type in the order of {@link #getCallNames()}.
+     *
+     * @return the latency histograms formatted as the lists of the bucket upper bounds and the call counts
+     */
+    String[] getLatencyHistograms();
+
+    /**
+     * Returns the number of the text delta bytes sent to the repository.
+     *
+     * @return the number of the sent bytes
+     */
+    long getBytesSent();
+
+    /**
+     * Returns the number of the file content bytes received from the repository.
+     *
+     * @return the number of the received bytes
+     */
+    long getBytesReceived();
+
+    /**
+     * Returns the human readable summary of the metrics.
+     *
+     * @return the metrics summary
+     */
+    String getSummary();
+
+    /** Resets all metrics. */
+    void reset();
+
+}
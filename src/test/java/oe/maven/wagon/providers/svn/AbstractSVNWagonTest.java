@@ -29,10 +29,15 @@
 
 package oe.maven.wagon.providers.svn;
 
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
 import org.apache.maven.wagon.Wagon;
 import org.apache.maven.wagon.WagonTestCase;
 import org.apache.maven.wagon.repository.Repository;
 import org.apache.maven.wagon.resource.Resource;
+import org.codehaus.plexus.util.FileUtils;
 import org.tmatesoft.svn.core.SVNAuthenticationException;
 import org.tmatesoft.svn.core.SVNDirEntry;
 import org.tmatesoft.svn.core.SVNException;
@@ -48,6 +53,33 @@ public abstract class AbstractSVNWagonTest extends WagonTestCase {
         return "svn";
     }
 
+    @Override
+    protected Wagon getWagon() throws Exception {
+        SVNWagon wagon = ( SVNWagon ) super.getWagon();
+        wagon.setRootCacheFile( getRootCacheFile() );
+        return wagon;
+    }
+
+    /**
+     * Creates a new wagon that keeps its repository root cache in the build directory instead of the user home.
+     *
+     * @return the new wagon
+     */
+    protected SVNWagon createWagon() {
+        SVNWagon wagon = new SVNWagon();
+        wagon.setRootCacheFile( getRootCacheFile() );
+        return wagon;
+    }
+
+    /**
+     * Returns the repository root cache file of the test wagons.
+     *
+     * @return the repository root cache file in the build directory
+     */
+    protected File getRootCacheFile() {
+        return new File( getBasedir(), "target/test/svn/repository-roots.properties" );
+    }
+
     @Override
     protected long getExpectedLastModifiedOnGet( Repository wagonRepository, Resource wagonResource ) {
         String wagonRepositoryUrl = wagonRepository.getUrl();
@@ -90,4 +122,147 @@ public abstract class AbstractSVNWagonTest extends WagonTestCase {
         tearDownWagonTestingFixtures();
     }
 
+    public void testDeltaUpload() throws Exception {
+        setupRepositories();
+        setupWagonTestingFixtures();
+
+        File deltaBaseDirectory = new File( getBasedir(), "target/test/svn/delta-base" );
+        FileUtils.deleteDirectory( deltaBaseDirectory );
+        File sourceFile = new File( getBasedir(), "target/test/svn/delta-source.txt" );
+        File destFile = new File( getBasedir(), "target/test/svn/delta-dest.txt" );
+        String resourceName = "delta/resource.txt";
+
+        SVNWagon wagon = ( SVNWagon ) getWagon();
+        wagon.setDeltaBaseDirectory( deltaBaseDirectory );
+        FileUtils.fileWrite( sourceFile.getAbsolutePath(), "first line\nsecond line\n" );
+        wagon.connect( testRepository, getAuthInfo() );
+        wagon.put( sourceFile, resourceName );
+        wagon.disconnect();
+
+        wagon.connect( testRepository, getAuthInfo() );
+        wagon.get( resourceName, destFile );
+        FileUtils.fileWrite( sourceFile.getAbsolutePath(), "first line\nchanged line\n" );
+        wagon.put( sourceFile, resourceName );
+        wagon.disconnect();
+
+        wagon.connect( testRepository, getAuthInfo() );
+        wagon.fetchDeltaBase( resourceName );
+        FileUtils.fileWrite( sourceFile.getAbsolutePath(), "first line\nchanged line\nthird line\n" );
+        wagon.put( sourceFile, resourceName );
+        wagon.disconnect();
+
+        wagon.connect( testRepository, getAuthInfo() );
+        wagon.get( resourceName, destFile );
+        wagon.disconnect();
+        assertEquals( "first line\nchanged line\nthird line\n", FileUtils.fileRead( destFile ) );
+
+        tearDownWagonTestingFixtures();
+    }
+
+    public void testBlobCache() throws Exception {
+        setupRepositories();
+        setupWagonTestingFixtures();
+
+        File blobCacheDirectory = new File( getBasedir(), "target/test/svn/blob-cache" );
+        FileUtils.deleteDirectory( blobCacheDirectory );
+        File sourceFile = new File( getBasedir(), "target/test/svn/blob-source.txt" );
+        FileUtils.fileWrite( sourceFile.getAbsolutePath(), "hello" );
+        File destFile = new File( getBasedir(), "target/test/svn/blob-dest.txt" );
+        String resourceName = "blob/resource.txt";
+
+        SVNWagon wagon = ( SVNWagon ) getWagon();
+        wagon.setBlobCacheDirectory( blobCacheDirectory );
+        wagon.setPinnedReads( true );
+        wagon.connect( testRepository, getAuthInfo() );
+        wagon.put( sourceFile, resourceName );
+        wagon.disconnect();
+
+        wagon.connect( testRepository, getAuthInfo() );
+        wagon.get( resourceName, destFile );
+        wagon.disconnect();
+        File blobFile = new File( blobCacheDirectory, "blobs/5d41402abc4b2a76b9719d911017c592" );
+        assertTrue( "content is not cached", blobFile.isFile() );
+
+        // the cached content of the indexed file revision is served without contacting the repository
+        FileUtils.fileWrite( blobFile.getAbsolutePath(), "cached" );
+        wagon.connect( testRepository, getAuthInfo() );
+        wagon.get( resourceName, destFile );
+        wagon.disconnect();
+        assertEquals( "cached", FileUtils.fileRead( destFile ) );
+
+        // the content evicted by another process is downloaded again
+        assertTrue( blobFile.delete() );
+        wagon.connect( testRepository, getAuthInfo() );
+        wagon.get( resourceName, destFile );
+        wagon.disconnect();
+        assertEquals( "hello", FileUtils.fileRead( destFile ) );
+
+        tearDownWagonTestingFixtures();
+    }
+
+    public void testPrefetch() throws Exception {
+        setupRepositories();
+        setupWagonTestingFixtures();
+
+        File sourceFile = new File( getBasedir(), "target/test/svn/prefetch-source.txt" );
+        File destFile = new File( getBasedir(), "target/test/svn/prefetch-dest.txt" );
+        List<String> resourceNames = new ArrayList<String>();
+        SVNWagon wagon = ( SVNWagon ) getWagon();
+        wagon.connect( testRepository, getAuthInfo() );
+        for ( int i = 0; i < 10; i++ ) {
+            FileUtils.fileWrite( sourceFile.getAbsolutePath(), "prefetched " + i );
+            wagon.put( sourceFile, "prefetch/resource" + i + ".txt" );
+            resourceNames.add( "prefetch/resource" + i + ".txt" );
+        }
+        wagon.disconnect();
+        resourceNames.add( "prefetch/missing.txt" );
+
+        wagon.setPrefetchSessions( 3 );
+        wagon.connect( testRepository, getAuthInfo() );
+        wagon.prefetch( resourceNames );
+        assertFalse( wagon.resourceExists( "prefetch/missing.txt" ) );
+        for ( int i = 0; i < 10; i++ ) {
+            wagon.get( "prefetch/resource" + i + ".txt", destFile );
+            assertEquals( "prefetched " + i, FileUtils.fileRead( destFile ) );
+        }
+        wagon.disconnect();
+
+        tearDownWagonTestingFixtures();
+    }
+
+    public void testPinnedReads() throws Exception {
+        setupRepositories();
+        setupWagonTestingFixtures();
+
+        File sourceFile = new File( getBasedir(), "target/test/svn/pinned-source.txt" );
+        FileUtils.fileWrite( sourceFile.getAbsolutePath(), "pinned" );
+        File destFile = new File( getBasedir(), "target/test/svn/pinned-dest.txt" );
+
+        SVNWagon pinnedWagon = ( SVNWagon ) getWagon();
+        pinnedWagon.setPinnedReads( true );
+        // without the commit retries the written files are not copied, so the reads depend on the local files
+        pinnedWagon.setCommitRetryCount( 0 );
+        pinnedWagon.connect( testRepository, getAuthInfo() );
+        assertFalse( pinnedWagon.resourceExists( "pinned/other.txt" ) );
+
+        Wagon otherWagon = getWagon();
+        otherWagon.connect( testRepository, getAuthInfo() );
+        otherWagon.put( sourceFile, "pinned/other.txt" );
+        otherWagon.disconnect();
+
+        assertFalse( "pinned/other.txt is visible", pinnedWagon.resourceExists( "pinned/other.txt" ) );
+        pinnedWagon.put( sourceFile, "pinned/own.txt" );
+        // the written resource is served from the local file without committing
+        pinnedWagon.get( "pinned/own.txt", destFile );
+        assertFalse( "pinned/other.txt is visible", pinnedWagon.resourceExists( "pinned/other.txt" ) );
+        // the local file has changed, the write session is committed and the reads are pinned to the new revision
+        FileUtils.fileWrite( sourceFile.getAbsolutePath(), "changed" );
+        pinnedWagon.get( "pinned/own.txt", destFile );
+        assertEquals( "pinned", FileUtils.fileRead( destFile ) );
+        assertTrue( "pinned/other.txt is not visible", pinnedWagon.resourceExists( "pinned/other.txt" ) );
+        pinnedWagon.disconnect();
+
+        tearDownWagonTestingFixtures();
+    }
+
 }
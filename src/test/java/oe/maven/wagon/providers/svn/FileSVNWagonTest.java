@@ -29,11 +29,42 @@
 
 package oe.maven.wagon.providers.svn;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilenameFilter;
 import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+import java.util.Set;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
 
+import org.apache.maven.wagon.ConnectionException;
+import org.apache.maven.wagon.ResourceDoesNotExistException;
+import org.apache.maven.wagon.TransferFailedException;
+import org.apache.maven.wagon.authentication.AuthenticationInfo;
+import org.apache.maven.wagon.events.TransferEvent;
+import org.apache.maven.wagon.observers.AbstractTransferListener;
+import org.apache.maven.wagon.observers.ChecksumObserver;
+import org.apache.maven.wagon.repository.Repository;
 import org.codehaus.plexus.util.FileUtils;
+import org.codehaus.plexus.util.IOUtil;
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.SVNLogEntry;
+import org.tmatesoft.svn.core.SVNLogEntryPath;
+import org.tmatesoft.svn.core.SVNNodeKind;
 import org.tmatesoft.svn.core.SVNURL;
+import org.tmatesoft.svn.core.internal.io.fs.FSRepositoryFactory;
+import org.tmatesoft.svn.core.io.SVNRepository;
 import org.tmatesoft.svn.core.io.SVNRepositoryFactory;
 
 public class FileSVNWagonTest extends AbstractSVNWagonTest {
@@ -67,4 +98,888 @@ public class FileSVNWagonTest extends AbstractSVNWagonTest {
         return "svn:" + tempRepositoryUrl.toString();
     }
 
+
+    public void testCheckPathRoundTrips() throws Exception {
+        setupRepositories();
+
+        File sourceFile = new File( getBasedir(), "target/test/svn/round-trips.txt" );
+        FileUtils.fileWrite( sourceFile.getAbsolutePath(), "round trips" );
+        File destFile = new File( getBasedir(), "target/test/svn/round-trips-dest.txt" );
+
+        CountingSVNWagon wagon = createCountingWagon();
+        wagon.connect( testRepository, getAuthInfo() );
+        int fileCount = 40;
+        for ( int i = 0; i < fileCount; i++ ) {
+            wagon.put( sourceFile, "com/acme/foo/bar/1.0/file-" + i + ".txt" );
+        }
+        // five directories and every file are checked exactly once
+        assertEquals( 5 + fileCount, wagon.checkPathCount );
+        wagon.get( "com/acme/foo/bar/1.0/file-0.txt", destFile );
+        assertTrue( wagon.resourceExists( "com/acme/foo/bar/1.0/file-1.txt" ) );
+        assertTrue( wagon.resourceExists( "com/acme/" ) );
+        assertEquals( 5 + fileCount, wagon.checkPathCount );
+        wagon.disconnect();
+
+        assertEquals( "round trips", FileUtils.fileRead( destFile ) );
+    }
+
+    public void testPutDirectoryRoundTrips() throws Exception {
+        setupRepositories();
+
+        File localDirectory = new File( getBasedir(), "target/test/svn/round-trips-site" );
+        FileUtils.deleteDirectory( localDirectory );
+        for ( int i = 0; i < 3; i++ ) {
+            for ( int j = 0; j < 5; j++ ) {
+                File file = new File( localDirectory, "dir-" + i + "/page-" + j + ".html" );
+                file.getParentFile().mkdirs();
+                FileUtils.fileWrite( file.getAbsolutePath(), "page " + i + "/" + j );
+            }
+        }
+        File destFile = new File( getBasedir(), "target/test/svn/round-trips-dest.html" );
+
+        // only the target directory itself is checked, the existing tree is requested with a single status report
+        CountingSVNWagon wagon = createCountingWagon();
+        wagon.connect( testRepository, getAuthInfo() );
+        wagon.putDirectory( localDirectory, "site" );
+        wagon.disconnect();
+        assertEquals( 1, wagon.checkPathCount );
+
+        FileUtils.fileWrite( new File( localDirectory, "dir-1/page-2.html" ).getAbsolutePath(), "changed" );
+        new File( localDirectory, "dir-3" ).mkdirs();
+        FileUtils.fileWrite( new File( localDirectory, "dir-3/page-0.html" ).getAbsolutePath(), "added" );
+        wagon = createCountingWagon();
+        wagon.connect( testRepository, getAuthInfo() );
+        wagon.putDirectory( localDirectory, "site" );
+        wagon.disconnect();
+        assertEquals( 1, wagon.checkPathCount );
+
+        wagon.connect( testRepository, getAuthInfo() );
+        wagon.get( "site/dir-1/page-2.html", destFile );
+        assertEquals( "changed", FileUtils.fileRead( destFile ) );
+        wagon.get( "site/dir-3/page-0.html", destFile );
+        assertEquals( "added", FileUtils.fileRead( destFile ) );
+        wagon.disconnect();
+    }
+
+    public void testIncrementalPutDirectory() throws Exception {
+        setupRepositories();
+
+        File localDirectory = new File( getBasedir(), "target/test/svn/incremental-site" );
+        FileUtils.deleteDirectory( localDirectory );
+        for ( int i = 0; i < 3; i++ ) {
+            File file = new File( localDirectory, "dir/page-" + i + ".html" );
+            file.getParentFile().mkdirs();
+            FileUtils.fileWrite( file.getAbsolutePath(), "page " + i );
+        }
+        new File( localDirectory, "stale" ).mkdirs();
+        FileUtils.fileWrite( new File( localDirectory, "stale/page.html" ).getAbsolutePath(), "stale" );
+
+        SVNWagon wagon = createWagon();
+        wagon.setIncrementalDirectoryPut( true );
+        wagon.setPrunedDirectoryPut( true );
+        wagon.connect( testRepository, getAuthInfo() );
+        wagon.putDirectory( localDirectory, "site" );
+        wagon.disconnect();
+
+        FileUtils.fileWrite( new File( localDirectory, "dir/page-1.html" ).getAbsolutePath(), "changed" );
+        FileUtils.deleteDirectory( new File( localDirectory, "stale" ) );
+        wagon.connect( testRepository, getAuthInfo() );
+        wagon.putDirectory( localDirectory, "site" );
+        wagon.disconnect();
+
+        SVNRepository repository = SVNRepositoryFactory.create( tempRepositoryUrl );
+        try {
+            long revision = repository.getLatestRevision();
+            @SuppressWarnings( "unchecked" )
+            Collection<SVNLogEntry> logEntries = repository.log( new String[] { "" }, null, revision, revision, true, false );
+            Set<?> changedPaths = logEntries.iterator().next().getChangedPaths().keySet();
+            assertEquals( new HashSet<String>( Arrays.asList( "/site/dir/page-1.html", "/site/stale" ) ), changedPaths );
+        } finally {
+            repository.closeSession();
+        }
+    }
+
+    public void testCommitSplitting() throws Exception {
+        setupRepositories();
+
+        File localDirectory = new File( getBasedir(), "target/test/svn/split-site" );
+        FileUtils.deleteDirectory( localDirectory );
+        for ( int i = 0; i < 3; i++ ) {
+            File directory = new File( localDirectory, "dir-" + i );
+            directory.mkdirs();
+            for ( int j = 0; j < 5; j++ ) {
+                FileUtils.fileWrite( new File( directory, "page-" + j + ".html" ).getAbsolutePath(), "page " + i + "/" + j );
+            }
+        }
+        File destFile = new File( getBasedir(), "target/test/svn/split-dest.html" );
+
+        SVNRepository repository = SVNRepositoryFactory.create( tempRepositoryUrl );
+        long revision = repository.getLatestRevision();
+
+        SVNWagon wagon = createWagon();
+        wagon.setCommitFileLimit( 4 );
+        wagon.connect( testRepository, getAuthInfo() );
+        wagon.putDirectory( localDirectory, "site" );
+        wagon.disconnect();
+
+        // the commits are split only at the directory boundaries
+        assertEquals( revision + 3, repository.getLatestRevision() );
+        repository.closeSession();
+
+        wagon.connect( testRepository, getAuthInfo() );
+        wagon.get( "site/dir-2/page-4.html", destFile );
+        wagon.disconnect();
+        assertEquals( "page 2/4", FileUtils.fileRead( destFile ) );
+    }
+
+    public void testDivergingPuts() throws Exception {
+        setupRepositories();
+
+        File sourceFile = new File( getBasedir(), "target/test/svn/diverging.txt" );
+        FileUtils.fileWrite( sourceFile.getAbsolutePath(), "first" );
+
+        SVNWagon wagon = createWagon();
+        wagon.connect( testRepository, getAuthInfo() );
+        wagon.put( sourceFile, "tree/a/b/one.txt" );
+        wagon.disconnect();
+
+        FSRepositoryFactory.setup();
+        SVNRepository repository = SVNRepositoryFactory.create( tempRepositoryUrl );
+        long revision = repository.getLatestRevision();
+
+        // the puts move between sibling, nested and parent directories of the open ones
+        String[] paths = { "tree/a/c/two.txt", "tree/a/b/d/three.txt", "tree/a/b/one.txt", "tree/top.txt",
+                "tree/a/c/e/f/four.txt", "tree/a/b/five.txt", "tree/g/six.txt" };
+        wagon.connect( testRepository, getAuthInfo() );
+        for ( String path : paths ) {
+            FileUtils.fileWrite( sourceFile.getAbsolutePath(), path );
+            wagon.put( sourceFile, path );
+        }
+        wagon.disconnect();
+
+        try {
+            assertEquals( revision + 1, repository.getLatestRevision() );
+            for ( String path : paths ) {
+                ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+                repository.getFile( path, revision + 1, null, outputStream );
+                assertEquals( path, outputStream.toString( "UTF-8" ) );
+            }
+            @SuppressWarnings( "unchecked" )
+            Collection<SVNLogEntry> logEntries = repository.log( new String[] { "" }, null, revision + 1, revision + 1, true, false );
+            Set<?> changedPaths = logEntries.iterator().next().getChangedPaths().keySet();
+            assertEquals( new HashSet<String>( Arrays.asList( "/tree/a/c", "/tree/a/c/two.txt", "/tree/a/b/d",
+                    "/tree/a/b/d/three.txt", "/tree/a/b/one.txt", "/tree/top.txt", "/tree/a/c/e", "/tree/a/c/e/f",
+                    "/tree/a/c/e/f/four.txt", "/tree/a/b/five.txt", "/tree/g", "/tree/g/six.txt" ) ), changedPaths );
+        } finally {
+            repository.closeSession();
+        }
+    }
+
+    public void testStagedGet() throws Exception {
+        setupRepositories();
+
+        File sourceFile = new File( getBasedir(), "target/test/svn/staged.txt" );
+        FileUtils.fileWrite( sourceFile.getAbsolutePath(), "staged" );
+        File destFile = new File( getBasedir(), "target/test/svn/staged-dest.txt" );
+        destFile.delete();
+
+        FSRepositoryFactory.setup();
+        SVNRepository repository = SVNRepositoryFactory.create( tempRepositoryUrl );
+        long revision = repository.getLatestRevision();
+
+        SVNWagon wagon = createWagon();
+        wagon.connect( testRepository, getAuthInfo() );
+        wagon.put( sourceFile, "com/acme/staged/1.0/staged-1.0.txt" );
+        wagon.get( "com/acme/staged/1.0/staged-1.0.txt", destFile );
+        assertEquals( "staged", FileUtils.fileRead( destFile ) );
+        assertFalse( wagon.getIfNewer( "com/acme/staged/1.0/staged-1.0.txt", destFile, System.currentTimeMillis() + 1000L ) );
+        assertTrue( wagon.resourceExists( "com/acme/staged/1.0/staged-1.0.txt" ) );
+        assertTrue( wagon.resourceExists( "com/acme/staged/" ) );
+        wagon.put( sourceFile, "com/acme/staged/1.0/staged-1.0.pom" );
+        wagon.disconnect();
+
+        // the reads of the written resources did not commit the write session
+        assertEquals( revision + 1, repository.getLatestRevision() );
+        repository.closeSession();
+    }
+
+    public void testCopy() throws Exception {
+        setupRepositories();
+
+        File sourceFile = new File( getBasedir(), "target/test/svn/copy.txt" );
+        FileUtils.fileWrite( sourceFile.getAbsolutePath(), "staged" );
+        File destFile = new File( getBasedir(), "target/test/svn/copy-dest.txt" );
+
+        SVNWagon wagon = createWagon();
+        wagon.connect( testRepository, getAuthInfo() );
+        wagon.put( sourceFile, "staging/com/acme/1.0/acme-1.0.jar" );
+        wagon.put( sourceFile, "staging/com/acme/1.0/acme-1.0.pom" );
+        wagon.put( sourceFile, "staging/com/acme/maven-metadata.xml" );
+        FileUtils.fileWrite( sourceFile.getAbsolutePath(), "released" );
+        wagon.put( sourceFile, "releases/com/acme/maven-metadata.xml" );
+        wagon.disconnect();
+
+        FSRepositoryFactory.setup();
+        SVNRepository repository = SVNRepositoryFactory.create( tempRepositoryUrl );
+        long revision = repository.getLatestRevision();
+
+        wagon.connect( testRepository, getAuthInfo() );
+        wagon.copy( "staging/com/acme/1.0/", "releases/com/acme/1.0/" );
+        wagon.copy( "staging/com/acme/maven-metadata.xml", "releases/com/acme/maven-metadata.xml" );
+        try {
+            wagon.copy( "staging/missing.txt", "releases/missing.txt" );
+            fail( "missing source copied" );
+        } catch ( ResourceDoesNotExistException expected ) {
+        }
+        // the copied directory is committed before its entries are read
+        wagon.get( "releases/com/acme/1.0/acme-1.0.pom", destFile );
+        assertEquals( "staged", FileUtils.fileRead( destFile ) );
+        wagon.get( "releases/com/acme/maven-metadata.xml", destFile );
+        assertEquals( "staged", FileUtils.fileRead( destFile ) );
+        wagon.disconnect();
+
+        try {
+            assertEquals( revision + 1, repository.getLatestRevision() );
+            @SuppressWarnings( "unchecked" )
+            Collection<SVNLogEntry> logEntries = repository.log( new String[] { "" }, null, revision + 1, revision + 1, true, false );
+            SVNLogEntry logEntry = logEntries.iterator().next();
+            SVNLogEntryPath directoryPath = ( SVNLogEntryPath ) logEntry.getChangedPaths().get( "/releases/com/acme/1.0" );
+            assertEquals( "/staging/com/acme/1.0", directoryPath.getCopyPath() );
+            SVNLogEntryPath filePath = ( SVNLogEntryPath ) logEntry.getChangedPaths().get( "/releases/com/acme/maven-metadata.xml" );
+            assertEquals( "/staging/com/acme/maven-metadata.xml", filePath.getCopyPath() );
+        } finally {
+            repository.closeSession();
+        }
+    }
+
+    public void testCopyAfterProbe() throws Exception {
+        setupRepositories();
+
+        File sourceFile = new File( getBasedir(), "target/test/svn/copy-probe.txt" );
+        FileUtils.fileWrite( sourceFile.getAbsolutePath(), "probed" );
+        File destFile = new File( getBasedir(), "target/test/svn/copy-probe-dest.txt" );
+
+        SVNWagon wagon = createWagon();
+        wagon.connect( testRepository, getAuthInfo() );
+        wagon.put( sourceFile, "probe-source/a.txt" );
+        assertFalse( wagon.resourceExists( "probe-dest/a.txt" ) );
+        wagon.copy( "probe-source", "probe-dest" );
+        // the node kind cached before the copy must not hide the copied entries after the commit
+        wagon.get( "probe-dest/a.txt", destFile );
+        assertEquals( "probed", FileUtils.fileRead( destFile ) );
+        assertTrue( wagon.resourceExists( "probe-dest/a.txt" ) );
+        assertFalse( wagon.resourceExists( "probe-dest/b.txt" ) );
+        wagon.copy( "probe-source", "probe-other" );
+        assertTrue( wagon.resourceExists( "probe-other/a.txt" ) );
+        wagon.disconnect();
+    }
+
+    public void testBlobCacheLock() throws Exception {
+        File cacheDirectory = new File( getBasedir(), "target/test/svn/blob-cache-lock" );
+        FileUtils.deleteDirectory( cacheDirectory );
+        File contentFile = new File( getBasedir(), "target/test/svn/blob-cache-lock.txt" );
+        FileUtils.fileWrite( contentFile.getAbsolutePath(), "read" );
+        String checksum = BaseContentStore.getChecksum( contentFile );
+
+        BlobCache cache = new BlobCache( cacheDirectory, 4L );
+        cache.putContent( "svn:read", new long[] { 1L }, checksum, 0L, contentFile );
+        InputStream inputStream = cache.openContent( checksum );
+        assertNotNull( inputStream );
+        try {
+            // the content that is being read is not evicted
+            FileUtils.fileWrite( contentFile.getAbsolutePath(), "other" );
+            cache.putContent( "svn:other", new long[] { 1L }, BaseContentStore.getChecksum( contentFile ), 0L, contentFile );
+            assertEquals( "read", IOUtil.toString( inputStream ) );
+        } finally {
+            inputStream.close();
+        }
+        assertNotNull( cache.getEntry( "svn:read", 1L ) );
+        cache.putContent( "svn:other", new long[] { 1L }, BaseContentStore.getChecksum( contentFile ), 0L, contentFile );
+        assertNull( cache.getEntry( "svn:read", 1L ) );
+        assertNull( cache.openContent( checksum ) );
+    }
+
+    public void testDedup() throws Exception {
+        setupRepositories();
+
+        File indexDirectory = new File( getBasedir(), "target/test/svn/dedup-index" );
+        FileUtils.deleteDirectory( indexDirectory );
+        File sourceFile = new File( getBasedir(), "target/test/svn/dedup.jar" );
+        FileUtils.fileWrite( sourceFile.getAbsolutePath(), "jar content" );
+        File otherFile = new File( getBasedir(), "target/test/svn/dedup.pom" );
+        FileUtils.fileWrite( otherFile.getAbsolutePath(), "longer pom content" );
+        File destFile = new File( getBasedir(), "target/test/svn/dedup-dest.jar" );
+
+        SVNWagon wagon = createWagon();
+        wagon.setDedupIndexDirectory( indexDirectory );
+        wagon.connect( testRepository, getAuthInfo() );
+        wagon.put( sourceFile, "com/acme/1.0-SNAPSHOT/acme-1.0-20110101.000000-1.jar" );
+        wagon.disconnect();
+
+        // an index entry whose length does not match is not used as a copy source
+        wagon.connect( testRepository, getAuthInfo() );
+        wagon.put( sourceFile, "com/acme/1.0-SNAPSHOT/acme-1.0-20110101.000000-2.jar" );
+        wagon.disconnect();
+        File[] indexFiles = indexDirectory.listFiles( new FilenameFilter() {
+            public boolean accept( File directory, String name ) {
+                return name.endsWith( ".properties" );
+            }
+        } );
+        assertEquals( 1, indexFiles.length );
+        Properties index = new Properties();
+        FileInputStream inputStream = new FileInputStream( indexFiles[ 0 ] );
+        try {
+            index.load( inputStream );
+        } finally {
+            inputStream.close();
+        }
+        index.setProperty( BaseContentStore.getChecksum( otherFile ), index.getProperty( BaseContentStore.getChecksum( sourceFile ) ) );
+        FileOutputStream outputStream = new FileOutputStream( indexFiles[ 0 ] );
+        try {
+            index.store( outputStream, null );
+        } finally {
+            outputStream.close();
+        }
+
+        // the index is updated from the log of the previous commit
+        ProgressCounter progressCounter = new ProgressCounter();
+        wagon.addTransferListener( progressCounter );
+        wagon.connect( testRepository, getAuthInfo() );
+        wagon.put( sourceFile, "com/acme/1.0/acme-1.0.jar" );
+        wagon.put( otherFile, "com/acme/1.0/acme-1.0.pom" );
+        wagon.disconnect();
+        wagon.removeTransferListener( progressCounter );
+        // the transfer listeners are notified once about every file, whether it is copied or sent
+        assertEquals( sourceFile.length() + otherFile.length(), progressCounter.count );
+
+        wagon.connect( testRepository, getAuthInfo() );
+        wagon.get( "com/acme/1.0/acme-1.0.jar", destFile );
+        wagon.disconnect();
+        assertEquals( "jar content", FileUtils.fileRead( destFile ) );
+
+        FSRepositoryFactory.setup();
+        SVNRepository repository = SVNRepositoryFactory.create( tempRepositoryUrl );
+        try {
+            long revision = repository.getLatestRevision();
+            @SuppressWarnings( "unchecked" )
+            Collection<SVNLogEntry> logEntries = repository.log( new String[] { "" }, null, revision, revision, true, false );
+            SVNLogEntry logEntry = logEntries.iterator().next();
+            SVNLogEntryPath jarPath = ( SVNLogEntryPath ) logEntry.getChangedPaths().get( "/com/acme/1.0/acme-1.0.jar" );
+            assertEquals( "/com/acme/1.0-SNAPSHOT/acme-1.0-20110101.000000-2.jar", jarPath.getCopyPath() );
+            SVNLogEntryPath pomPath = ( SVNLogEntryPath ) logEntry.getChangedPaths().get( "/com/acme/1.0/acme-1.0.pom" );
+            assertNull( pomPath.getCopyPath() );
+        } finally {
+            repository.closeSession();
+        }
+    }
+
+    public void testRevisionIndex() throws Exception {
+        setupRepositories();
+
+        File indexDirectory = new File( getBasedir(), "target/test/svn/revision-index" );
+        FileUtils.deleteDirectory( indexDirectory );
+        File sourceFile = new File( getBasedir(), "target/test/svn/revision-index.xml" );
+        FileUtils.fileWrite( sourceFile.getAbsolutePath(), "metadata" );
+        File destFile = new File( getBasedir(), "target/test/svn/revision-index-dest.xml" );
+
+        SVNWagon wagon = createWagon();
+        wagon.connect( testRepository, getAuthInfo() );
+        wagon.put( sourceFile, "com/acme/a/maven-metadata.xml" );
+        wagon.put( sourceFile, "com/acme/b/maven-metadata.xml" );
+        wagon.disconnect();
+
+        SVNWagon indexedWagon = createWagon();
+        indexedWagon.setRevisionIndexDirectory( indexDirectory );
+        indexedWagon.connect( testRepository, getAuthInfo() );
+        assertTrue( indexedWagon.getIfNewer( "com/acme/a/maven-metadata.xml", destFile, 0 ) );
+        assertTrue( indexedWagon.getIfNewer( "com/acme/b/maven-metadata.xml", destFile, 0 ) );
+        assertFalse( indexedWagon.resourceExists( "com/acme/c/maven-metadata.xml" ) );
+        indexedWagon.disconnect();
+
+        wagon.connect( testRepository, getAuthInfo() );
+        wagon.put( sourceFile, "com/acme/b/maven-metadata.xml" );
+        wagon.put( sourceFile, "com/acme/c/maven-metadata.xml" );
+        wagon.disconnect();
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName( "oe.maven.wagon.providers.svn:type=SVNWagonMetrics" );
+        List<String> callNames = Arrays.asList( ( String[] ) server.getAttribute( name, "CallNames" ) );
+        long[] callCounts = ( long[] ) server.getAttribute( name, "CallCounts" );
+        long future = System.currentTimeMillis() + 60000L;
+        indexedWagon.connect( testRepository, getAuthInfo() );
+        // the unchanged path is answered locally, the changed paths are requested again
+        assertFalse( indexedWagon.getIfNewer( "com/acme/a/maven-metadata.xml", destFile, future ) );
+        assertFalse( indexedWagon.getIfNewer( "com/acme/b/maven-metadata.xml", destFile, future ) );
+        assertTrue( indexedWagon.resourceExists( "com/acme/c/maven-metadata.xml" ) );
+        indexedWagon.disconnect();
+        long[] newCallCounts = ( long[] ) server.getAttribute( name, "CallCounts" );
+        assertEquals( 1, newCallCounts[ callNames.indexOf( "info" ) ] - callCounts[ callNames.indexOf( "info" ) ] );
+        assertEquals( 1, newCallCounts[ callNames.indexOf( "checkPath" ) ] - callCounts[ callNames.indexOf( "checkPath" ) ] );
+        assertEquals( 1, newCallCounts[ callNames.indexOf( "log" ) ] - callCounts[ callNames.indexOf( "log" ) ] );
+    }
+
+    public void testSinglePassPut() throws Exception {
+        setupRepositories();
+
+        File deltaBaseDirectory = new File( getBasedir(), "target/test/svn/single-pass-base" );
+        FileUtils.deleteDirectory( deltaBaseDirectory );
+        File sourceFile = new File( getBasedir(), "target/test/svn/single-pass.txt" );
+        FileUtils.fileWrite( sourceFile.getAbsolutePath(), "first line\nsecond line\n" );
+        File destFile = new File( getBasedir(), "target/test/svn/single-pass-dest.txt" );
+
+        SVNWagon wagon = createWagon();
+        wagon.setDeltaBaseDirectory( deltaBaseDirectory );
+        ChecksumObserver checksumObserver = new ChecksumObserver( "MD5" );
+        ProgressCounter progressCounter = new ProgressCounter();
+        wagon.addTransferListener( checksumObserver );
+        wagon.addTransferListener( progressCounter );
+        wagon.connect( testRepository, getAuthInfo() );
+        wagon.put( sourceFile, "single-pass/file.txt" );
+        wagon.disconnect();
+
+        // the bytes read for the full text are the bytes seen by the transfer listeners
+        assertEquals( BaseContentStore.getChecksum( sourceFile ), checksumObserver.getActualChecksum() );
+        assertEquals( sourceFile.length(), progressCounter.count );
+
+        wagon.connect( testRepository, getAuthInfo() );
+        wagon.get( "single-pass/file.txt", destFile );
+        wagon.disconnect();
+        FileUtils.fileWrite( sourceFile.getAbsolutePath(), "first line\nchanged line\n" );
+        progressCounter.count = 0;
+        wagon.connect( testRepository, getAuthInfo() );
+        wagon.put( sourceFile, "single-pass/file.txt" );
+        wagon.disconnect();
+        wagon.removeTransferListener( checksumObserver );
+        wagon.removeTransferListener( progressCounter );
+
+        // the same holds for the delta against the stored base
+        assertEquals( BaseContentStore.getChecksum( sourceFile ), checksumObserver.getActualChecksum() );
+        assertEquals( sourceFile.length(), progressCounter.count );
+
+        wagon.connect( testRepository, getAuthInfo() );
+        wagon.get( "single-pass/file.txt", destFile );
+        wagon.disconnect();
+        assertEquals( "first line\nchanged line\n", FileUtils.fileRead( destFile ) );
+    }
+
+    public void testPipelinedPut() throws Exception {
+        setupRepositories();
+
+        byte[] content = new byte[ 3 * 1024 * 1024 + 12345 ];
+        new Random( 42 ).nextBytes( content );
+        File sourceFile = new File( getBasedir(), "target/test/svn/pipelined.bin" );
+        FileOutputStream outputStream = new FileOutputStream( sourceFile );
+        try {
+            outputStream.write( content );
+        } finally {
+            outputStream.close();
+        }
+        File destFile = new File( getBasedir(), "target/test/svn/pipelined-dest.bin" );
+
+        SVNWagon wagon = createWagon();
+        wagon.setPipelinedPut( true );
+        ChecksumObserver checksumObserver = new ChecksumObserver( "MD5" );
+        ProgressCounter progressCounter = new ProgressCounter();
+        wagon.addTransferListener( checksumObserver );
+        wagon.addTransferListener( progressCounter );
+        wagon.connect( testRepository, getAuthInfo() );
+        wagon.put( sourceFile, "pipelined/file.bin" );
+        wagon.disconnect();
+        wagon.removeTransferListener( checksumObserver );
+        wagon.removeTransferListener( progressCounter );
+
+        // the transfer listeners received the whole content in order, and only once
+        assertEquals( BaseContentStore.getChecksum( sourceFile ), checksumObserver.getActualChecksum() );
+        assertEquals( content.length, progressCounter.count );
+
+        wagon.connect( testRepository, getAuthInfo() );
+        wagon.get( "pipelined/file.bin", destFile );
+        wagon.disconnect();
+        assertEquals( BaseContentStore.getChecksum( sourceFile ), BaseContentStore.getChecksum( destFile ) );
+    }
+
+    public void testLazyConnect() throws Exception {
+        SVNWagon wagon = new SVNWagon();
+        wagon.setRootCacheFile( null );
+        File missingRepository = new File( getBasedir(), "target/test/svn/missing-repository" );
+        wagon.connect( new Repository( "missing", "svn:" + SVNURL.fromFile( missingRepository ).toString() ) );
+        try {
+            wagon.resourceExists( "resource.txt" );
+            fail( "the missing repository was accessed" );
+        } catch ( TransferFailedException e ) {
+            // expected
+        } finally {
+            wagon.disconnect();
+        }
+    }
+
+    public void testRootCachePruning() throws Exception {
+        File cacheFile = new File( getBasedir(), "target/test/svn/pruned-roots.properties" );
+        cacheFile.delete();
+        RepositoryRootCache cache = new RepositoryRootCache( cacheFile );
+        File missingRepository = new File( getBasedir(), "target/test/svn/missing-repository" );
+        cache.put( "svn:missing", SVNURL.fromFile( missingRepository ).toString() );
+        for ( int i = 0; i < RepositoryRootCache.MAX_ENTRY_COUNT + 10; i++ ) {
+            cache.put( "svn:remote-" + i, "svn://localhost/remote-" + i );
+        }
+        // the deleted local repository and the oldest entries are removed
+        assertNull( cache.get( "svn:missing" ) );
+        Properties roots = new Properties();
+        FileInputStream inputStream = new FileInputStream( cacheFile );
+        try {
+            roots.load( inputStream );
+        } finally {
+            inputStream.close();
+        }
+        assertEquals( RepositoryRootCache.MAX_ENTRY_COUNT, roots.size() );
+    }
+
+    public void testRepositoryPool() throws Exception {
+        SVNRepositoryPool repositoryPool = SVNRepositoryPool.getInstance();
+        SVNRepository repository = repositoryPool.acquire( tempRepositoryUrl, null, null );
+        repositoryPool.release( repository );
+        assertSame( repository, repositoryPool.acquire( tempRepositoryUrl, null, null ) );
+
+        AuthenticationInfo authenticationInfo = new AuthenticationInfo();
+        authenticationInfo.setUserName( "user" );
+        SVNRepository otherRepository = repositoryPool.acquire( tempRepositoryUrl, authenticationInfo, null );
+        assertNotSame( repository, otherRepository );
+        repositoryPool.discard( otherRepository );
+        repositoryPool.discard( repository );
+
+        SVNWagonMetrics metrics = new SVNWagonMetrics( null );
+        SVNURL url = tempRepositoryUrl.appendPath( "pool-" + System.nanoTime(), false );
+        assertEquals( tempRepositoryUrl, repositoryPool.getRepositoryRoot( url, null, metrics ) );
+        assertEquals( tempRepositoryUrl, repositoryPool.getRepositoryRoot( url, null, metrics ) );
+        List<String> callNames = Arrays.asList( metrics.getCallNames() );
+        // the root is requested once, and the UUID is received together with it
+        assertEquals( 1, metrics.getCallCounts()[ callNames.indexOf( "getRepositoryRoot" ) ] );
+        assertEquals( 0, metrics.getCallCounts()[ callNames.indexOf( "getRepositoryUUID" ) ] );
+    }
+
+    public void testCommitConflictRetry() throws Exception {
+        setupRepositories();
+
+        File firstFile = new File( getBasedir(), "target/test/svn/conflict-first.txt" );
+        FileUtils.fileWrite( firstFile.getAbsolutePath(), "first" );
+        File secondFile = new File( getBasedir(), "target/test/svn/conflict-second.txt" );
+        FileUtils.fileWrite( secondFile.getAbsolutePath(), "second" );
+        File destFile = new File( getBasedir(), "target/test/svn/conflict-dest.txt" );
+
+        SVNWagon firstWagon = createWagon();
+        firstWagon.setCommitRetryDelay( 1L );
+        firstWagon.connect( testRepository, getAuthInfo() );
+        firstWagon.put( firstFile, "conflict/1.0/first.txt" );
+        SVNWagon secondWagon = createWagon();
+        secondWagon.connect( testRepository, getAuthInfo() );
+        secondWagon.put( secondFile, "conflict/1.0/second.txt" );
+        secondWagon.disconnect();
+        // both commits add the same directory, the first one is replayed on top of the second one
+        firstWagon.disconnect();
+
+        SVNWagon wagon = createWagon();
+        wagon.connect( testRepository, getAuthInfo() );
+        wagon.get( "conflict/1.0/first.txt", destFile );
+        assertEquals( "first", FileUtils.fileRead( destFile ) );
+        wagon.get( "conflict/1.0/second.txt", destFile );
+        assertEquals( "second", FileUtils.fileRead( destFile ) );
+        wagon.disconnect();
+    }
+
+    public void testCommitConflictRetryWithDeletedFile() throws Exception {
+        setupRepositories();
+
+        File firstFile = new File( getBasedir(), "target/test/svn/conflict-first.txt.sha1" );
+        FileUtils.fileWrite( firstFile.getAbsolutePath(), "first" );
+        File secondFile = new File( getBasedir(), "target/test/svn/conflict-second.txt" );
+        FileUtils.fileWrite( secondFile.getAbsolutePath(), "second" );
+        File destFile = new File( getBasedir(), "target/test/svn/conflict-dest.txt" );
+
+        SVNWagon firstWagon = createWagon();
+        firstWagon.setCommitRetryDelay( 1L );
+        firstWagon.connect( testRepository, getAuthInfo() );
+        firstWagon.put( firstFile, "conflict/1.0/first.txt.sha1" );
+        // the temporary checksum files are deleted right after they are put
+        assertTrue( firstFile.delete() );
+        SVNWagon secondWagon = createWagon();
+        secondWagon.connect( testRepository, getAuthInfo() );
+        secondWagon.put( secondFile, "conflict/1.0/second.txt" );
+        secondWagon.disconnect();
+        // the replay sends the copy of the deleted file
+        firstWagon.disconnect();
+
+        SVNWagon wagon = createWagon();
+        wagon.connect( testRepository, getAuthInfo() );
+        wagon.get( "conflict/1.0/first.txt.sha1", destFile );
+        wagon.disconnect();
+        assertEquals( "first", FileUtils.fileRead( destFile ) );
+    }
+
+    public void testCommitConflictOnWrittenPath() throws Exception {
+        setupRepositories();
+
+        File firstFile = new File( getBasedir(), "target/test/svn/conflict-first.xml" );
+        FileUtils.fileWrite( firstFile.getAbsolutePath(), "first" );
+        File secondFile = new File( getBasedir(), "target/test/svn/conflict-second.xml" );
+        FileUtils.fileWrite( secondFile.getAbsolutePath(), "second" );
+        File destFile = new File( getBasedir(), "target/test/svn/conflict-dest.xml" );
+
+        SVNWagon wagon = createWagon();
+        wagon.connect( testRepository, getAuthInfo() );
+        wagon.put( firstFile, "conflict/maven-metadata.xml" );
+        wagon.disconnect();
+
+        SVNWagon firstWagon = createWagon();
+        firstWagon.setCommitRetryDelay( 1L );
+        firstWagon.connect( testRepository, getAuthInfo() );
+        firstWagon.put( firstFile, "conflict/maven-metadata.xml" );
+        firstWagon.put( firstFile, "conflict/new/file.txt" );
+        SVNWagon secondWagon = createWagon();
+        secondWagon.connect( testRepository, getAuthInfo() );
+        secondWagon.put( secondFile, "conflict/maven-metadata.xml" );
+        secondWagon.disconnect();
+        // the replay would overwrite the concurrent change of the same file
+        try {
+            firstWagon.disconnect();
+            fail( "concurrent change overwritten" );
+        } catch ( ConnectionException expected ) {
+        }
+
+        wagon.connect( testRepository, getAuthInfo() );
+        wagon.get( "conflict/maven-metadata.xml", destFile );
+        assertFalse( wagon.resourceExists( "conflict/new/file.txt" ) );
+        wagon.disconnect();
+        assertEquals( "second", FileUtils.fileRead( destFile ) );
+    }
+
+    public void testWriteBehind() throws Exception {
+        setupRepositories();
+
+        File sourceFile = new File( getBasedir(), "target/test/svn/write-behind.txt" );
+        FileUtils.fileWrite( sourceFile.getAbsolutePath(), "write behind" );
+        File destFile = new File( getBasedir(), "target/test/svn/write-behind-dest.txt" );
+
+        final List<String> failedResourceNames = new ArrayList<String>();
+        AbstractTransferListener errorListener = new AbstractTransferListener() {
+            @Override
+            public void transferError( TransferEvent transferEvent ) {
+                failedResourceNames.add( transferEvent.getResource().getName() );
+            }
+        };
+        SVNWagon wagon = createWagon();
+        wagon.setWriteBehind( true );
+        wagon.addTransferListener( errorListener );
+        wagon.connect( testRepository, getAuthInfo() );
+        wagon.put( sourceFile, "behind/a.txt" );
+        wagon.put( sourceFile, "behind/b.txt" );
+        wagon.put( sourceFile, "behind/a.txt/c.txt" );
+        try {
+            wagon.disconnect();
+            fail();
+        } catch ( ConnectionException expected ) {
+            // the failure names the resource that failed to be sent
+            assertTrue( expected.getMessage(), expected.getMessage().contains( "behind/a.txt/c.txt" ) );
+        }
+        wagon.removeTransferListener( errorListener );
+        assertEquals( Arrays.asList( "behind/a.txt/c.txt" ), failedResourceNames );
+
+        wagon.connect( testRepository, getAuthInfo() );
+        assertFalse( wagon.resourceExists( "behind/a.txt" ) );
+        wagon.put( sourceFile, "behind/a.txt" );
+        wagon.disconnect();
+
+        wagon.connect( testRepository, getAuthInfo() );
+        wagon.get( "behind/a.txt", destFile );
+        wagon.disconnect();
+        assertEquals( "write behind", FileUtils.fileRead( destFile ) );
+    }
+
+    public void testWriteBehindNotifications() throws Exception {
+        setupRepositories();
+
+        File indexDirectory = new File( getBasedir(), "target/test/svn/write-behind-index" );
+        FileUtils.deleteDirectory( indexDirectory );
+        File sourceFile = new File( getBasedir(), "target/test/svn/write-behind-copy.txt" );
+        FileUtils.fileWrite( sourceFile.getAbsolutePath(), "write behind copy" );
+
+        SVNWagon wagon = createWagon();
+        wagon.setDedupIndexDirectory( indexDirectory );
+        wagon.connect( testRepository, getAuthInfo() );
+        wagon.put( sourceFile, "behind/1/copy.txt" );
+        wagon.disconnect();
+
+        final List<Thread> debugThreads = new ArrayList<Thread>();
+        final List<String> debugMessages = new ArrayList<String>();
+        AbstractTransferListener debugListener = new AbstractTransferListener() {
+            @Override
+            public void debug( String message ) {
+                debugThreads.add( Thread.currentThread() );
+                debugMessages.add( message );
+            }
+        };
+        wagon.setWriteBehind( true );
+        wagon.addTransferListener( debugListener );
+        wagon.connect( testRepository, getAuthInfo() );
+        wagon.put( sourceFile, "behind/2/copy.txt" );
+        wagon.disconnect();
+        wagon.removeTransferListener( debugListener );
+
+        // the debug messages of the background put are delivered on the calling thread
+        boolean copyReported = false;
+        for ( String message : debugMessages ) {
+            copyReported |= message.startsWith( "behind/2/copy.txt is added as a copy of behind/1/copy.txt@" );
+        }
+        assertTrue( copyReported );
+        for ( Thread thread : debugThreads ) {
+            assertSame( Thread.currentThread(), thread );
+        }
+    }
+
+    public void testRecursiveFileList() throws Exception {
+        setupRepositories();
+
+        File sourceFile = new File( getBasedir(), "target/test/svn/file-list.txt" );
+        FileUtils.fileWrite( sourceFile.getAbsolutePath(), "file list" );
+
+        SVNWagon wagon = createWagon();
+        wagon.connect( testRepository, getAuthInfo() );
+        wagon.put( sourceFile, "list/a.txt" );
+        wagon.put( sourceFile, "list/sub/b.txt" );
+        wagon.put( sourceFile, "list/sub/deeper/c.txt" );
+        wagon.disconnect();
+
+        wagon.connect( testRepository, getAuthInfo() );
+        List<String> recursiveList = wagon.getFileList( "list", true );
+        final List<String> handledList = new ArrayList<String>();
+        wagon.getFileList( "list/sub", false, new FileListHandler() {
+            public void handleEntry( String name ) {
+                handledList.add( name );
+            }
+        } );
+        try {
+            wagon.getFileList( "list/missing", true );
+            fail();
+        } catch ( ResourceDoesNotExistException expected ) {
+        }
+        wagon.disconnect();
+
+        assertEquals( new HashSet<String>( Arrays.asList( "a.txt", "sub/", "sub/b.txt", "sub/deeper/", "sub/deeper/c.txt" ) ),
+                new HashSet<String>( recursiveList ) );
+        assertTrue( recursiveList.indexOf( "sub/" ) < recursiveList.indexOf( "sub/deeper/c.txt" ) );
+        assertEquals( new HashSet<String>( Arrays.asList( "b.txt", "deeper/" ) ), new HashSet<String>( handledList ) );
+    }
+
+    public void testDeltaBaseRevision() throws Exception {
+        setupRepositories();
+
+        File deltaBaseDirectory = new File( getBasedir(), "target/test/svn/delta-base-revision" );
+        FileUtils.deleteDirectory( deltaBaseDirectory );
+        File localDirectory = new File( getBasedir(), "target/test/svn/delta-base-local" );
+        FileUtils.deleteDirectory( localDirectory );
+        assertTrue( new File( localDirectory, "sub" ).mkdirs() );
+        FileUtils.fileWrite( new File( localDirectory, "a.txt" ).getAbsolutePath(), "first a\n" );
+        FileUtils.fileWrite( new File( localDirectory, "sub/b.txt" ).getAbsolutePath(), "first b\n" );
+        File destFile = new File( getBasedir(), "target/test/svn/delta-base-dest.txt" );
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName( "oe.maven.wagon.providers.svn:type=SVNWagonMetrics" );
+        List<String> callNames = Arrays.asList( ( String[] ) server.getAttribute( name, "CallNames" ) );
+        SVNWagon wagon = createWagon();
+        wagon.setDeltaBaseDirectory( deltaBaseDirectory );
+        wagon.connect( testRepository, getAuthInfo() );
+        wagon.putDirectory( localDirectory, "delta-base" );
+        wagon.disconnect();
+        wagon.connect( testRepository, getAuthInfo() );
+        wagon.get( "delta-base/a.txt", destFile );
+        wagon.get( "delta-base/sub/b.txt", destFile );
+        wagon.disconnect();
+
+        // the base revisions are taken from the remote tree snapshot
+        FileUtils.fileWrite( new File( localDirectory, "a.txt" ).getAbsolutePath(), "first a\nsecond a\n" );
+        FileUtils.fileWrite( new File( localDirectory, "sub/b.txt" ).getAbsolutePath(), "first b\nsecond b\n" );
+        long infoCount = ( ( long[] ) server.getAttribute( name, "CallCounts" ) )[ callNames.indexOf( "info" ) ];
+        wagon.connect( testRepository, getAuthInfo() );
+        wagon.putDirectory( localDirectory, "delta-base" );
+        wagon.disconnect();
+        assertEquals( infoCount, ( ( long[] ) server.getAttribute( name, "CallCounts" ) )[ callNames.indexOf( "info" ) ] );
+
+        // the stored base of a file changed by another deployer is out of date, the full content is sent instead
+        SVNWagon otherWagon = createWagon();
+        otherWagon.connect( testRepository, getAuthInfo() );
+        otherWagon.get( "delta-base/a.txt", destFile );
+        FileUtils.fileWrite( destFile.getAbsolutePath(), "other a\n" );
+        otherWagon.put( destFile, "delta-base/a.txt" );
+        otherWagon.disconnect();
+        FileUtils.fileWrite( new File( localDirectory, "a.txt" ).getAbsolutePath(), "third a\n" );
+        wagon.connect( testRepository, getAuthInfo() );
+        wagon.put( new File( localDirectory, "a.txt" ), "delta-base/a.txt" );
+        wagon.disconnect();
+
+        wagon.connect( testRepository, getAuthInfo() );
+        wagon.get( "delta-base/a.txt", destFile );
+        assertEquals( "third a\n", FileUtils.fileRead( destFile ) );
+        wagon.get( "delta-base/sub/b.txt", destFile );
+        assertEquals( "first b\nsecond b\n", FileUtils.fileRead( destFile ) );
+        wagon.disconnect();
+    }
+
+    public void testMetrics() throws Exception {
+        setupRepositories();
+
+        File sourceFile = new File( getBasedir(), "target/test/svn/metrics.txt" );
+        FileUtils.fileWrite( sourceFile.getAbsolutePath(), "metrics" );
+        File destFile = new File( getBasedir(), "target/test/svn/metrics-dest.txt" );
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName( "oe.maven.wagon.providers.svn:type=SVNWagonMetrics" );
+        SVNWagon wagon = createWagon();
+        wagon.connect( testRepository, getAuthInfo() );
+        List<String> callNames = Arrays.asList( ( String[] ) server.getAttribute( name, "CallNames" ) );
+        long[] callCounts = ( long[] ) server.getAttribute( name, "CallCounts" );
+        long bytesSent = ( Long ) server.getAttribute( name, "BytesSent" );
+        long bytesReceived = ( Long ) server.getAttribute( name, "BytesReceived" );
+        wagon.put( sourceFile, "metrics/file.txt" );
+        wagon.disconnect();
+        wagon.connect( testRepository, getAuthInfo() );
+        wagon.get( "metrics/file.txt", destFile );
+        wagon.disconnect();
+
+        long[] newCallCounts = ( long[] ) server.getAttribute( name, "CallCounts" );
+        assertEquals( 1, newCallCounts[ callNames.indexOf( "commit" ) ] - callCounts[ callNames.indexOf( "commit" ) ] );
+        assertEquals( 1, newCallCounts[ callNames.indexOf( "getFile" ) ] - callCounts[ callNames.indexOf( "getFile" ) ] );
+        assertTrue( ( Long ) server.getAttribute( name, "BytesSent" ) > bytesSent );
+        assertEquals( "metrics".length(), ( Long ) server.getAttribute( name, "BytesReceived" ) - bytesReceived );
+    }
+
+
+    private CountingSVNWagon createCountingWagon() {
+        CountingSVNWagon wagon = new CountingSVNWagon();
+        wagon.setRootCacheFile( getRootCacheFile() );
+        return wagon;
+    }
+
+
+    private static class ProgressCounter extends AbstractTransferListener {
+
+        private long count;
+
+        @Override
+        public void transferProgress( TransferEvent transferEvent, byte[] buffer, int length ) {
+            count += length;
+        }
+
+    }
+
+    private static class CountingSVNWagon extends SVNWagon {
+
+        private int checkPathCount;
+
+        @Override
+        SVNNodeKind checkPathInternal( String repositoryPath, long revision ) throws SVNException {
+            checkPathCount++;
+            return super.checkPathInternal( repositoryPath, revision );
+        }
+
+    }
+
 }